@@ -29,9 +29,16 @@
 
 package au.edu.anu.twapps.mm;
 
+import java.util.List;
+
+import au.edu.anu.twapps.mm.layout.FRLayout;
 import au.edu.anu.twapps.mm.layout.LayoutType;
 import au.edu.anu.twapps.mm.layoutGraph.LayoutEdge;
+import au.edu.anu.twapps.mm.layoutGraph.LayoutGraphFactory;
 import au.edu.anu.twapps.mm.layoutGraph.LayoutNode;
+import au.edu.anu.twapps.mm.layoutGraph.LayoutNodeIndex;
+import au.edu.anu.twapps.mm.layoutGraph.LevelOfDetail;
+import au.edu.anu.twapps.mm.layoutGraph.VisualElementFactory;
 import fr.cnrs.iees.omugi.graph.impl.TreeGraph;
 import au.edu.anu.twcore.root.World;
 
@@ -67,7 +74,19 @@ public interface GraphVisualiser {
 	public void onNewEdge(LayoutEdge edge, double duration);
 
 	/**
-	 * Collapse a sub-tree to the given root.
+	 * Move the visual elements of nodes whose position has been changed by an
+	 * incremental layout (see {@link FRLayout#setIncremental(java.util.Collection, int)}).
+	 * 
+	 * @param nodes    Nodes that have moved.
+	 * @param duration Duration in ms of animation.
+	 */
+	public void onNodesMoved(List<LayoutNode> nodes, double duration);
+
+	/**
+	 * Collapse a sub-tree to the given root. If the layout graph has a
+	 * {@link VisualElementFactory}, the caller then releases the drawing objects
+	 * of the hidden nodes ({@link LayoutNode#releaseSubTree()}) and they are made
+	 * again on demand when the sub-tree is expanded.
 	 * 
 	 * @param root     Root of the sub-tree to be hidden.
 	 * @param duration Duration in ms of animation.
@@ -89,6 +108,36 @@ public interface GraphVisualiser {
 	 */
 	public TreeGraph<LayoutNode, LayoutEdge> getLayoutGraph();
 
+	/**
+	 * Get the spatial index of node positions of the layout graph. Use this for
+	 * hit-testing and to cull nodes outside the viewport rather than scanning
+	 * {@link #getLayoutGraph()}.
+	 * 
+	 * @return index of node positions.
+	 */
+	public default LayoutNodeIndex getNodeIndex() {
+		return ((LayoutGraphFactory) getLayoutGraph().nodeFactory()).nodeIndex();
+	}
+
+	/**
+	 * Level-of-detail query for a viewport. Implementations should create symbols
+	 * only for {@link LevelOfDetail#getNodes()} and draw a single glyph for each
+	 * {@link LevelOfDetail#getClusters()} rather than materialising every node of
+	 * the graph.
+	 * 
+	 * @param minX       Left edge of the viewport.
+	 * @param minY       Top edge of the viewport.
+	 * @param maxX       Right edge of the viewport.
+	 * @param maxY       Bottom edge of the viewport.
+	 * @param resolution Size (in layout coordinates) below which nodes of the same
+	 *                   category are merged (0 for full detail).
+	 * @return The nodes and clusters to draw.
+	 */
+	public default LevelOfDetail getLevelOfDetail(double minX, double minY, double maxX, double maxY,
+			double resolution) {
+		return LevelOfDetail.of(getNodeIndex(), minX, minY, maxX, maxY, resolution);
+	}
+
 	/**
 	 * Clear all elements of the view.
 	 */
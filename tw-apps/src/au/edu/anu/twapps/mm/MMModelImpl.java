@@ -207,6 +207,7 @@ public class MMModelImpl implements MMModel {
 		/** hide the predefined nodes for new models */
 //		controller.collapsePredef();
 		controller.visualiser().collapsePredef();
+		releaseCollapsed();
 
 		/** Re apply layout after collapsing predefined tree. */
 		controller.doLayout(duration);
@@ -327,17 +328,20 @@ public class MMModelImpl implements MMModel {
 	@Override
 	@SuppressWarnings("unchecked")
 	public final void restore(MMMemento m) {
+		// rebuild the files of the prev state
+		Tuple<File, File, File> state = m.getState();
+
 		// get the prev config graph
 		TreeGraph<TreeGraphDataNode, ALEdge> a = (TreeGraph<TreeGraphDataNode, ALEdge>) FileImporter
-				.loadGraphFromFile(m.getState().getFirst());
+				.loadGraphFromFile(state.getFirst());
 
 		// get the prev layout graph
 		TreeGraph<LayoutNode, LayoutEdge> b = (TreeGraph<LayoutNode, LayoutEdge>) FileImporter
-				.loadGraphFromFile(m.getState().getSecond());
+				.loadGraphFromFile(state.getSecond());
 
 		// get the prev preferences data
 		try {
-			Files.copy(m.getState().getThird().toPath(), Project.makeProjectPreferencesFile().toPath(),
+			Files.copy(state.getThird().toPath(), Project.makeProjectPreferencesFile().toPath(),
 					StandardCopyOption.REPLACE_EXISTING);
 		} catch (IOException e) {
 			e.printStackTrace();
@@ -374,6 +378,7 @@ public class MMModelImpl implements MMModel {
 		TreeGraph<TreeGraphDataNode, ALEdge> a = (TreeGraph<TreeGraphDataNode, ALEdge>) FileImporter
 				.loadGraphFromFile(f);
 
+		LayoutNode.storePositions(layoutGraph.nodes());
 		new OmugiGraphExporter(f).exportGraph(layoutGraph);
 
 		TreeGraph<LayoutNode, LayoutEdge> b = (TreeGraph<LayoutNode, LayoutEdge>) FileImporter.loadGraphFromFile(f);
@@ -452,6 +457,7 @@ public class MMModelImpl implements MMModel {
 		/** hide the predefined nodes for imported graphs */
 //		controller.collapsePredef();
 		controller.visualiser().collapsePredef();
+		releaseCollapsed();
 
 		/** Re apply layout after collapsing predefined tree. */
 		controller.doLayout(duration);
@@ -510,6 +516,7 @@ public class MMModelImpl implements MMModel {
 		ConfigGraph.close();
 		layoutGraph = null;
 		Caretaker.finalise();
+		MMMemento.deleteStrandedFiles();
 	}
 
 	/**
@@ -535,6 +542,7 @@ public class MMModelImpl implements MMModel {
 			addState("init");
 		}
 		new OmugiGraphExporter(Project.makeConfigurationFile()).exportGraph(ConfigGraph.getGraph());
+		LayoutNode.storePositions(layoutGraph.nodes());
 		new OmugiGraphExporter(Project.makeLayoutFile()).exportGraph(layoutGraph);
 
 		GraphStateService.getImplementation().clear();
@@ -706,6 +714,12 @@ public class MMModelImpl implements MMModel {
 		}
 	}
 
+	// drop drawing objects of hidden nodes (lazy mode only)
+	private void releaseCollapsed() {
+		for (LayoutNode root : layoutGraph.roots())
+			root.releaseSubTree();
+	}
+
 	private void shadowGraph() {
 		for (LayoutNode vn : layoutGraph.nodes())
 			vn.shadowElements(ConfigGraph.getGraph());
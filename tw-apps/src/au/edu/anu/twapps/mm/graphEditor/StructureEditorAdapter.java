@@ -45,6 +45,7 @@ import au.edu.anu.twapps.dialogs.DialogService;
 import au.edu.anu.twapps.mm.GraphVisualiser;
 import au.edu.anu.twapps.mm.MMController;
 import au.edu.anu.twapps.mm.configGraph.ConfigGraph;
+import au.edu.anu.twapps.mm.layout.FRLayout;
 import au.edu.anu.twapps.mm.layoutGraph.ElementDisplayText;
 import au.edu.anu.twapps.mm.layoutGraph.LayoutEdge;
 import au.edu.anu.twapps.mm.layoutGraph.LayoutGraphFactory;
@@ -90,6 +91,8 @@ import static au.edu.anu.qgraph.queries.base.SequenceQuery.*;
  */
 public abstract class StructureEditorAdapter implements StructureEditor {
 	private static Logger log = Logging.getLogger(StructureEditorAdapter.class);
+	/* Number of edges away from an edit within which the drawing is re-settled */
+	private static final int SETTLE_HOPS = 2;
 
 	/**
 	 * Reference to the 3Worlds {@link Specifications} interface.
@@ -248,6 +251,11 @@ public abstract class StructureEditorAdapter implements StructureEditor {
 
 		specifications.filterRequiredPropertyQuery(newChild, childBaseSpec, childSubSpec);
 
+		List<LayoutNode> moved = settle(List.of(newChild));
+		// the new child is drawn by the controller
+		moved.remove(newChild);
+		visualiser.onNodesMoved(moved, 0.0);
+
 		controller.onNewNode(newChild);
 	}
 
@@ -304,6 +312,7 @@ public abstract class StructureEditorAdapter implements StructureEditor {
 	@Override
 	public void onCollapseTree(LayoutNode childRoot, double duration) {
 		visualiser.collapseTreeFrom(childRoot, duration);
+		childRoot.releaseSubTree();
 		controller.onTreeCollapse();
 		GraphStateService.getImplementation().setChanged();
 	}
@@ -311,8 +320,10 @@ public abstract class StructureEditorAdapter implements StructureEditor {
 	@Override
 	public void onCollapseTrees(double duration) {
 		for (LayoutNode child : nodeEditor.getChildren()) {
-			if (!child.isCollapsed())
+			if (!child.isCollapsed()) {
 				visualiser.collapseTreeFrom(child, duration);
+				child.releaseSubTree();
+			}
 		}
 		controller.onTreeCollapse();
 		GraphStateService.getImplementation().setChanged();
@@ -815,7 +826,26 @@ public abstract class StructureEditorAdapter implements StructureEditor {
 			controller.onNewEdge(vEdge);
 		}
 		visualiser.onNewEdge(vEdge, duration);
+		visualiser.onNodesMoved(settle(List.of(nodeEditor.layoutNode(), target)), duration);
+	}
 
+	/*
+	 * Re-settle the drawing around new or changed nodes rather than re-running the
+	 * whole layout (see FRLayout.setIncremental). A new node starts at its parent's
+	 * position. Returns the nodes that have moved.
+	 */
+	private List<LayoutNode> settle(List<LayoutNode> changed) {
+		for (LayoutNode n : changed)
+			if (!n.hasPosition() && n.getParent() != null && n.getParent().hasPosition())
+				n.setPosition(n.getParent().getX(), n.getParent().getY());
+		TreeGraph<LayoutNode, LayoutEdge> graph = visualiser.getLayoutGraph();
+		// pinned nodes must all have been drawn
+		for (LayoutNode n : graph.nodes())
+			if (n.isVisible() && !n.isCollapsed() && !n.hasPosition())
+				return new ArrayList<>();
+		FRLayout layout = new FRLayout(graph, true, true, false).setIncremental(changed, SETTLE_HOPS);
+		layout.compute(0.0);
+		return new ArrayList<>(layout.getMoved());
 	}
 
 	private void deleteNode(LayoutNode vNode, double duration) {
@@ -0,0 +1,70 @@
+/**************************************************************************
+ *  TW-APPS - Applications used by 3Worlds                                *
+ *                                                                        *
+ *  Copyright 2018: Jacques Gignoux & Ian D. Davies                       *
+ *       jacques.gignoux@upmc.fr                                          *
+ *       ian.davies@anu.edu.au                                            * 
+ *                                                                        *
+ *  TW-APPS contains ModelMaker and ModelRunner, programs used to         *
+ *  construct and run 3Worlds configuration graphs. All code herein is    *
+ *  independent of UI implementation.                                     *
+ *                                                                        *
+ **************************************************************************                                       
+ *  This file is part of TW-APPS (3Worlds applications).                  *
+ *                                                                        *
+ *  TW-APPS is free software: you can redistribute it and/or modify       *
+ *  it under the terms of the GNU General Public License as published by  *
+ *  the Free Software Foundation, either version 3 of the License, or     *
+ *  (at your option) any later version.                                   *
+ *                                                                        *
+ *  TW-APPS is distributed in the hope that it will be useful,            *
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *  GNU General Public License for more details.                          *                         
+ *                                                                        *
+ *  You should have received a copy of the GNU General Public License     *
+ *  along with TW-APPS.                                                   *
+ *  If not, see <https://www.gnu.org/licenses/gpl.html>                   *
+  **************************************************************************/
+package au.edu.anu.twapps.mm.layout;
+
+/**
+ * 
+ * Cooling schedules for force-directed layouts. The temperature limits how far
+ * a vertex may move in one iteration and needs to reduce as the layout comes
+ * into equilibrium.
+ */
+public enum CoolingSchedule {
+	/**
+	 * Temperature falls by the same amount each iteration, reaching zero at the
+	 * last iteration.
+	 */
+	Linear {
+		@Override
+		public double cool(double ti, int i, double t0, int m) {
+			return FRLayout.cool(ti, i, t0, m);
+		}
+	},
+	/**
+	 * Temperature falls by the same factor each iteration, reaching 1% of the
+	 * initial temperature at the last iteration. This leaves more of the budget
+	 * for fine adjustments.
+	 */
+	Exponential {
+		@Override
+		public double cool(double ti, int i, double t0, int m) {
+			return ti * Math.pow(0.01, 1.0 / m);
+		}
+	};
+
+	/**
+	 * Compute the temperature for the next iteration.
+	 * 
+	 * @param ti current temperature
+	 * @param i  iteration number
+	 * @param t0 initial temperature
+	 * @param m  total number of iterations that may be performed.
+	 * @return the new temperature.
+	 */
+	public abstract double cool(double ti, int i, double t0, int m);
+}
@@ -0,0 +1,525 @@
+/**************************************************************************
+ *  TW-APPS - Applications used by 3Worlds                                *
+ *                                                                        *
+ *  Copyright 2018: Jacques Gignoux & Ian D. Davies                       *
+ *       jacques.gignoux@upmc.fr                                          *
+ *       ian.davies@anu.edu.au                                            * 
+ *                                                                        *
+ *  TW-APPS contains ModelMaker and ModelRunner, programs used to         *
+ *  construct and run 3Worlds configuration graphs. All code herein is    *
+ *  independent of UI implementation.                                     *
+ *                                                                        *
+ **************************************************************************                                       
+ *  This file is part of TW-APPS (3Worlds applications).                  *
+ *                                                                        *
+ *  TW-APPS is free software: you can redistribute it and/or modify       *
+ *  it under the terms of the GNU General Public License as published by  *
+ *  the Free Software Foundation, either version 3 of the License, or     *
+ *  (at your option) any later version.                                   *
+ *                                                                        *
+ *  TW-APPS is distributed in the hope that it will be useful,            *
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *  GNU General Public License for more details.                          *                         
+ *                                                                        *
+ *  You should have received a copy of the GNU General Public License     *
+ *  along with TW-APPS.                                                   *
+ *  If not, see <https://www.gnu.org/licenses/gpl.html>                   *
+  **************************************************************************/
+
+package au.edu.anu.twapps.mm.layout;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Function;
+
+/**
+ * <p>
+ * Array-based core of the spring layouts ({@link FRLayout},
+ * {@link LmbLayout}).
+ * </p>
+ * <p>
+ * Vertex positions and forces are held in flat {@code double[]} arrays and
+ * edges as pairs of vertex indices, so the inner loops neither chase
+ * references nor unbox the {@link au.edu.anu.twapps.mm.layoutGraph.LayoutNode
+ * LayoutNode} properties. Positions are read from the vertices with
+ * {@link #read()} and written back with {@link #write()}; in between the
+ * iterations run entirely on the arrays.
+ * </p>
+ * <p>
+ * Forces can optionally be computed on a {@link ForkJoinPool}. Vertices
+ * are then partitioned into contiguous ranges and each task owns the force
+ * slots of its range. A vertex's displacement is gathered from all other
+ * vertices in index order, and from its edges in edge-list order. This is
+ * exactly the order in which the sequential pair-wise loops add terms to
+ * a vertex, so the result is bit-for-bit the same as the sequential pass
+ * whatever the number of threads. Coincident vertices are pushed apart
+ * along an angle taken from the higher index of the pair and negated for
+ * the lower one, so both passes add identical terms. The price is that
+ * each repulsive pair is evaluated twice, once for each vertex.
+ * </p>
+ * <p>
+ * Movement can be restricted to a neighbourhood of vertices with
+ * {@link #setFree(Collection, int, double)}; forces are then only
+ * gathered for the free vertices.
+ * </p>
+ */
+public class FRKernel {
+	/* Smallest range of vertices worth a task of its own */
+	private static final int THRESHOLD = 64;
+
+	private final List<? extends FRVertex> vertices;
+	private final int n;
+	private final double[] xs;
+	private final double[] ys;
+	private final double[] fx;
+	private final double[] fy;
+	/* edge end points in edge-list order */
+	private final int[] edgeP;
+	private final int[] edgeQ;
+	private final Map<FRVertex, Integer> index;
+	/* indices of the vertices free to move (null if all are free) */
+	private int[] free;
+	/* squared range of repulsion between free and pinned vertices */
+	private double cutoff2 = Double.POSITIVE_INFINITY;
+	/* Incident edges of each vertex in edge-list order (compressed rows) */
+	private int[] adjStart;
+	private int[] adjOther;
+	private QuadTree tree;
+	private double theta;
+	private ForkJoinPool pool;
+
+	/**
+	 * @param <E>      edge type
+	 * @param vertices the vertices taking part in the layout.
+	 * @param edges    the edges of the layout in the order in which attraction is
+	 *                 applied.
+	 * @param p        function returning the first vertex of an edge.
+	 * @param q        function returning the second vertex of an edge.
+	 */
+	public <E> FRKernel(List<? extends FRVertex> vertices, List<E> edges, Function<E, ? extends FRVertex> p,
+			Function<E, ? extends FRVertex> q) {
+		this.vertices = vertices;
+		this.n = vertices.size();
+		xs = new double[n];
+		ys = new double[n];
+		fx = new double[n];
+		fy = new double[n];
+
+		index = new IdentityHashMap<>();
+		for (int i = 0; i < n; i++)
+			index.put(vertices.get(i), i);
+		edgeP = new int[edges.size()];
+		edgeQ = new int[edges.size()];
+		for (int e = 0; e < edges.size(); e++) {
+			edgeP[e] = index.get(p.apply(edges.get(e)));
+			edgeQ[e] = index.get(q.apply(edges.get(e)));
+		}
+	}
+
+	/**
+	 * A kernel on an abstract graph with no vertex objects. Positions are set and
+	 * retrieved with {@link #setPositions(double[], double[])} and
+	 * {@link #positions(double[], double[])} rather than {@link #read()} and
+	 * {@link #write()}.
+	 * 
+	 * @param n     number of vertices.
+	 * @param edgeP first vertex index of each edge.
+	 * @param edgeQ second vertex index of each edge.
+	 */
+	public FRKernel(int n, int[] edgeP, int[] edgeQ) {
+		this.vertices = null;
+		this.n = n;
+		xs = new double[n];
+		ys = new double[n];
+		fx = new double[n];
+		fy = new double[n];
+		index = new IdentityHashMap<>();
+		this.edgeP = edgeP;
+		this.edgeQ = edgeQ;
+	}
+
+	/**
+	 * Set the Barnes-Hut opening criterion (see {@link QuadTree}).
+	 * 
+	 * @param theta opening criterion (0 for exact repulsion).
+	 * @return this kernel.
+	 */
+	public FRKernel setTheta(double theta) {
+		this.theta = theta;
+		if (theta > 0.0 && tree == null)
+			tree = new QuadTree();
+		return this;
+	}
+
+	/**
+	 * Set the pool used to compute forces.
+	 * 
+	 * @param pool the pool, or null to compute sequentially.
+	 * @return this kernel.
+	 */
+	public FRKernel setPool(ForkJoinPool pool) {
+		this.pool = pool;
+		if (pool != null && adjStart == null)
+			buildAdjacency();
+		return this;
+	}
+
+	/**
+	 * Restrict movement to the vertices within a number of hops (along edges) of
+	 * the given vertices. All other vertices are pinned: they still attract, and
+	 * repel the free vertices within the given radius, but keep their position.
+	 * Seeds that are not part of the layout are ignored.
+	 * <p>
+	 * A finished drawing is generally not at equilibrium (it is frozen by
+	 * cooling, not by a balance of forces), so the long-range repulsion of the
+	 * whole graph would push a free neighbourhood outwards. Limiting repulsion to
+	 * a radius of a few spring lengths, as in the grid variant of Fruchterman and
+	 * Reingold, keeps the relaxation local. Repulsion is then gathered exactly,
+	 * ignoring {@link #setTheta(double)}.
+	 * </p>
+	 * 
+	 * @param seeds  vertices whose neighbourhood is free to move, or null to free
+	 *               all vertices.
+	 * @param hops   size of the neighbourhood.
+	 * @param radius range of repulsion (infinite for no limit).
+	 * @return this kernel.
+	 */
+	public FRKernel setFree(Collection<? extends FRVertex> seeds, int hops, double radius) {
+		if (seeds == null) {
+			free = null;
+			cutoff2 = Double.POSITIVE_INFINITY;
+			return this;
+		}
+		cutoff2 = radius * radius;
+		if (adjStart == null)
+			buildAdjacency();
+		int[] depth = new int[n];
+		Arrays.fill(depth, -1);
+		Deque<Integer> queue = new ArrayDeque<>();
+		for (FRVertex v : seeds) {
+			Integer i = index.get(v);
+			if (i != null && depth[i] < 0) {
+				depth[i] = 0;
+				queue.add(i);
+			}
+		}
+		while (!queue.isEmpty()) {
+			int i = queue.poll();
+			if (depth[i] < hops)
+				for (int a = adjStart[i]; a < adjStart[i + 1]; a++) {
+					int o = adjOther[a];
+					if (depth[o] < 0) {
+						depth[o] = depth[i] + 1;
+						queue.add(o);
+					}
+				}
+		}
+		int count = 0;
+		for (int i = 0; i < n; i++)
+			if (depth[i] >= 0)
+				count++;
+		free = new int[count];
+		count = 0;
+		for (int i = 0; i < n; i++)
+			if (depth[i] >= 0)
+				free[count++] = i;
+		return this;
+	}
+
+	/**
+	 * @return number of vertices free to move.
+	 */
+	public int freeSize() {
+		return free == null ? n : free.length;
+	}
+
+	/**
+	 * @return the vertices free to move.
+	 */
+	public List<FRVertex> freeVertices() {
+		List<FRVertex> result = new ArrayList<>(freeSize());
+		for (int j = 0; j < freeSize(); j++)
+			result.add(vertices.get(free == null ? j : free[j]));
+		return result;
+	}
+
+	/**
+	 * @return number of vertices.
+	 */
+	public int size() {
+		return n;
+	}
+
+	/**
+	 * Copy the vertex positions into the kernel.
+	 */
+	public void read() {
+		for (int i = 0; i < n; i++) {
+			FRVertex v = vertices.get(i);
+			xs[i] = v.getX();
+			ys[i] = v.getY();
+		}
+	}
+
+	/**
+	 * Copy the current kernel positions.
+	 * 
+	 * @param x receives the x coordinates (length at least {@link #size()}).
+	 * @param y receives the y coordinates (length at least {@link #size()}).
+	 */
+	public void positions(double[] x, double[] y) {
+		System.arraycopy(xs, 0, x, 0, n);
+		System.arraycopy(ys, 0, y, 0, n);
+	}
+
+	/**
+	 * Set the kernel positions.
+	 * 
+	 * @param x the x coordinates (length at least {@link #size()}).
+	 * @param y the y coordinates (length at least {@link #size()}).
+	 */
+	public void setPositions(double[] x, double[] y) {
+		System.arraycopy(x, 0, xs, 0, n);
+		System.arraycopy(y, 0, ys, 0, n);
+	}
+
+	/**
+	 * Scale the kernel positions about the origin.
+	 * 
+	 * @param factor scale factor.
+	 */
+	public void scale(double factor) {
+		for (int i = 0; i < n; i++) {
+			xs[i] *= factor;
+			ys[i] *= factor;
+		}
+	}
+
+	/**
+	 * Copy the kernel positions of the free vertices back to the vertices.
+	 */
+	public void write() {
+		for (int j = 0; j < freeSize(); j++) {
+			int i = free == null ? j : free[j];
+			vertices.get(i).setLocation(xs[i], ys[i]);
+		}
+	}
+
+	/**
+	 * Add the forces of the last call to {@link #forces(double)} to the vertices'
+	 * own displacement. Used when the rest of the iteration is done on the vertex
+	 * objects.
+	 */
+	public void applyForces() {
+		for (int i = 0; i < n; i++) {
+			vertices.get(i).addDisplacement(fx[i], fy[i]);
+			fx[i] = 0;
+			fy[i] = 0;
+		}
+	}
+
+	/**
+	 * Compute the repulsion and attraction displacement of every vertex.
+	 * 
+	 * @param k spacing constant (ideal spring length)
+	 */
+	public void forces(double k) {
+		if (theta > 0.0 && free == null)
+			tree.build(xs, ys, n);
+		if (pool != null)
+			pool.invoke(new ForceTask(0, freeSize(), k));
+		else if (free != null)
+			gatherForces(0, free.length, k);
+		else {
+			if (theta > 0.0)
+				tree.repulsion(null, 0, n, k, theta, fx, fy);
+			else
+				repulsion(k);
+			attraction(k);
+		}
+	}
+
+	/**
+	 * Move every free vertex by its displacement limited by the temperature (cf.
+	 * {@link FRVertex#displace(double)}).
+	 * 
+	 * @param temperature temperature
+	 * @return energy: the sum of the displacement magnitudes before limiting.
+	 */
+	public double displace(double temperature) {
+		double energy = 0;
+		for (int j = 0; j < freeSize(); j++) {
+			int i = free == null ? j : free[j];
+			double force = Math.sqrt(fx[i] * fx[i] + fy[i] * fy[i]);
+			if (force < temperature) {
+				xs[i] += fx[i];
+				ys[i] += fy[i];
+			} else {
+				double fact = temperature / force;
+				xs[i] += fx[i] * fact;
+				ys[i] += fy[i] * fact;
+			}
+			fx[i] = 0;
+			fy[i] = 0;
+			energy += force;
+		}
+		return energy;
+	}
+
+	private void repulsion(double k) {
+		for (int a = 0; a < n; a++)
+			for (int b = a + 1; b < n; b++) {
+				double dx = xs[b] - xs[a];
+				double dy = ys[b] - ys[a];
+				if (dx == 0 && dy == 0) {
+					double ang = FRVertex.coincidentAngle(b, a);
+					dx = k * Math.cos(ang);
+					dy = k * Math.sin(ang);
+				}
+				double force = FRVertex.fRepulsion(k, Math.sqrt(dx * dx + dy * dy));
+				fx[b] += dx * force;
+				fy[b] += dy * force;
+				fx[a] -= dx * force;
+				fy[a] -= dy * force;
+			}
+	}
+
+	private void attraction(double k) {
+		for (int e = 0; e < edgeP.length; e++) {
+			int a = edgeP[e];
+			int b = edgeQ[e];
+			// self-loops have no net effect (and are left out of the adjacency)
+			if (a == b)
+				continue;
+			double dx = xs[b] - xs[a];
+			double dy = ys[b] - ys[a];
+			if (dx == 0 && dy == 0) {
+				// edges are unordered: take the angle from the higher index
+				double ang = FRVertex.coincidentAngle(Math.max(a, b), Math.min(a, b));
+				dx = k * Math.cos(ang);
+				dy = k * Math.sin(ang);
+				if (b < a) {
+					dx = -dx;
+					dy = -dy;
+				}
+			}
+			double force = FRVertex.fAttract(k, Math.sqrt(dx * dx + dy * dy));
+			fx[b] -= dx * force;
+			fy[b] -= dy * force;
+			fx[a] += dx * force;
+			fy[a] += dy * force;
+		}
+	}
+
+	private void buildAdjacency() {
+		adjStart = new int[n + 1];
+		for (int e = 0; e < edgeP.length; e++)
+			// self-loops have no net effect
+			if (edgeP[e] != edgeQ[e]) {
+				adjStart[edgeP[e] + 1]++;
+				adjStart[edgeQ[e] + 1]++;
+			}
+		for (int i = 0; i < n; i++)
+			adjStart[i + 1] += adjStart[i];
+		adjOther = new int[adjStart[n]];
+		int[] fill = new int[n];
+		for (int e = 0; e < edgeP.length; e++)
+			if (edgeP[e] != edgeQ[e]) {
+				adjOther[adjStart[edgeP[e]] + fill[edgeP[e]]++] = edgeQ[e];
+				adjOther[adjStart[edgeQ[e]] + fill[edgeQ[e]]++] = edgeP[e];
+			}
+	}
+
+	/* Owner-computes forces for the free vertices [from,to) */
+	private void gatherForces(int from, int to, double k) {
+		if (theta > 0.0 && free == null)
+			tree.repulsion(null, from, to, k, theta, fx, fy);
+		else
+			for (int j = from; j < to; j++) {
+				int i = free == null ? j : free[j];
+				double sx = 0;
+				double sy = 0;
+				for (int o = 0; o < n; o++)
+					if (o != i) {
+						double dx = xs[i] - xs[o];
+						double dy = ys[i] - ys[o];
+						if (dx == 0 && dy == 0) {
+							/*
+							 * Same angle as the sequential pair loop, negated for the lower index, so
+							 * both paths give identical bits.
+							 */
+							double ang = FRVertex.coincidentAngle(Math.max(i, o), Math.min(i, o));
+							dx = k * Math.cos(ang);
+							dy = k * Math.sin(ang);
+							if (i < o) {
+								dx = -dx;
+								dy = -dy;
+							}
+						} else if (dx * dx + dy * dy > cutoff2)
+							continue;
+						double force = FRVertex.fRepulsion(k, Math.sqrt(dx * dx + dy * dy));
+						sx += dx * force;
+						sy += dy * force;
+					}
+				fx[i] = sx;
+				fy[i] = sy;
+			}
+		for (int j = from; j < to; j++) {
+			int i = free == null ? j : free[j];
+			double sx = fx[i];
+			double sy = fy[i];
+			for (int a = adjStart[i]; a < adjStart[i + 1]; a++) {
+				int o = adjOther[a];
+				double dx = xs[o] - xs[i];
+				double dy = ys[o] - ys[i];
+				if (dx == 0 && dy == 0) {
+					double ang = FRVertex.coincidentAngle(Math.max(i, o), Math.min(i, o));
+					dx = k * Math.cos(ang);
+					dy = k * Math.sin(ang);
+					if (o < i) {
+						dx = -dx;
+						dy = -dy;
+					}
+				}
+				double force = FRVertex.fAttract(k, Math.sqrt(dx * dx + dy * dy));
+				sx += dx * force;
+				sy += dy * force;
+			}
+			fx[i] = sx;
+			fy[i] = sy;
+		}
+	}
+
+	@SuppressWarnings("serial")
+	private class ForceTask extends RecursiveAction {
+		private final int from;
+		private final int to;
+		private final double k;
+
+		private ForceTask(int from, int to, double k) {
+			this.from = from;
+			this.to = to;
+			this.k = k;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= THRESHOLD)
+				gatherForces(from, to, k);
+			else {
+				int mid = (from + to) >>> 1;
+				invokeAll(new ForceTask(from, mid, k), new ForceTask(mid, to, k));
+			}
+		}
+	}
+
+}
@@ -30,9 +30,14 @@
 package au.edu.anu.twapps.mm.layout;
 
 import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 import au.edu.anu.omhtk.rng.Pcg32;
 import au.edu.anu.twapps.mm.layoutGraph.LayoutEdge;
@@ -55,11 +60,36 @@ import fr.cnrs.iees.omhtk.utils.Duple;
  *         Springer, Berlin, Heidelberg.
  */
 public class FRLayout implements ILayout {
+	/* Incremental mode: edges settle at about this many k once repulsion is short-range */
+	private static final double EDGES_PER_K = 3.0;
+	/* Incremental mode: t0 in edge lengths per iteration; linear cooling moves a vertex half this far */
+	private static final double INCREMENTAL_T0 = 8.0;
+	/* Incremental mode: pinned vertices repel free ones within this many k, i.e. just beyond an edge */
+	private static final double FREE_RADIUS = 2.0;
 
 	private List<FRVertex> vertices;
 	private List<Duple<FRVertex, FRVertex>> edges;
 	/* vertices excluded from the alg. These are lined up on the RH side. */
 	private List<FRVertex> isolated;
+	/* look-up of vertices by node id */
+	private Map<String, FRVertex> vertexIndex;
+	/* Barnes-Hut opening criterion. Zero for exact repulsion. */
+	private double theta;
+	/* Compute forces on the common ForkJoinPool */
+	private boolean parallel;
+	/* maximum number of iterations */
+	private int maxIterations = 600;
+	private CoolingSchedule cooling = CoolingSchedule.Linear;
+	/* Stop when the mean force per vertex falls below this fraction of k */
+	private double tolerance;
+	/* results of the last computation */
+	private int iterations;
+	private double energy;
+	private List<LayoutNode> moved = new ArrayList<>();
+	/* nodes whose neighbourhood is re-settled (null for a full layout) */
+	private Collection<LayoutNode> changed;
+	private int hops;
+	private boolean warmStart;
 
 	/**
 	 * Build a force-directed layout
@@ -72,8 +102,32 @@ public class FRLayout implements ILayout {
 	public FRLayout(TreeGraph<LayoutNode, LayoutEdge> graph, boolean includeParentChildEdges, boolean includeCrossLinks,
 			boolean sideline) {
 		vertices = new ArrayList<>();
-		edges = new ArrayList<>();
 		isolated = new ArrayList<>();
+		edges = collect(graph, includeParentChildEdges, includeCrossLinks, sideline, vertices, isolated);
+		vertexIndex = new HashMap<>();
+		for (FRVertex v : vertices)
+			vertexIndex.put(v.id(), v);
+		for (FRVertex v : isolated)
+			vertexIndex.put(v.id(), v);
+	}
+
+	/**
+	 * Collect the vertices of all visible nodes and the visible edges between them
+	 * (shared with {@link MLLayout}).
+	 * 
+	 * @param graph                   The layout graph
+	 * @param includeParentChildEdges Include parent-child edges
+	 * @param includeCrossLinks       Include cross-link edges
+	 * @param sideline                Move vertices without edges to isolated
+	 * @param vertices                receives the vertices, sorted by id
+	 * @param isolated                receives the vertices without edges if
+	 *                                sideline
+	 * @return the edges, in order of their first vertex.
+	 */
+	static List<Duple<FRVertex, FRVertex>> collect(TreeGraph<LayoutNode, LayoutEdge> graph,
+			boolean includeParentChildEdges, boolean includeCrossLinks, boolean sideline, List<FRVertex> vertices,
+			List<FRVertex> isolated) {
+		List<Duple<FRVertex, FRVertex>> edges = new ArrayList<>();
 		/* make vertices of visible nodes only */
 		for (LayoutNode v : graph.nodes()) {
 			if (!v.isCollapsed() && v.isVisible()) {
@@ -82,6 +136,9 @@ public class FRLayout implements ILayout {
 		}
 		/* sort for predictability */
 		vertices.sort((v1,v2)->v1.id().compareTo(v2.id()));
+		Map<String, FRVertex> index = new HashMap<>();
+		for (FRVertex v : vertices)
+			index.put(v.id(), v);
 
 		/* collect all visible edges */
 		for (FRVertex v : vertices) {
@@ -90,7 +147,7 @@ public class FRLayout implements ILayout {
 			if (includeParentChildEdges)
 				for (LayoutNode cn : vn.getChildren())
 					if (!cn.isCollapsed() && cn.isVisible()) {
-						FRVertex u = Node2Vertex(cn);
+						FRVertex u = Node2Vertex(index, cn);
 						edges.add(new Duple<FRVertex, FRVertex>(v, u));
 						v.setHasEdge(true);
 						u.setHasEdge(true);// couldn't fine "u"
@@ -103,7 +160,7 @@ public class FRLayout implements ILayout {
 					if (ve.isVisible()) {
 						LayoutNode endNode = (LayoutNode) ve.endNode();
 						if (!endNode.isCollapsed() && endNode.isVisible()) {
-							FRVertex u = Node2Vertex(endNode);
+							FRVertex u = Node2Vertex(index, endNode);
 							edges.add(new Duple<FRVertex, FRVertex>(v, u));
 							v.setHasEdge(true);
 							u.setHasEdge(true);
@@ -119,70 +176,299 @@ public class FRLayout implements ILayout {
 				if (!v.hasEdges())
 					isolated.add(v);
 
-			for (FRVertex v : isolated) {
-				vertices.remove(v);
+			vertices.removeIf(v -> !v.hasEdges());
+		}
+		return edges;
+	}
+
+	/**
+	 * Select how repulsion forces are computed. With theta = 0 (the default) the
+	 * force between every pair of vertices is computed exactly, which is O(n^2) per
+	 * iteration. With theta &gt; 0, a {@link QuadTree} is built each iteration and
+	 * groups of vertices whose width to distance ratio is less than theta are
+	 * treated as a single body (Barnes-Hut). Values around 0.5 to 1.0 are typical;
+	 * larger values are faster but less accurate.
+	 * 
+	 * @param theta Barnes-Hut opening criterion (0 for exact repulsion).
+	 * @return this layout.
+	 */
+	public FRLayout setBarnesHut(double theta) {
+		if (theta < 0.0)
+			throw new IllegalArgumentException("Barnes-Hut theta must be >= 0 [" + theta + "]");
+		this.theta = theta;
+		return this;
+	}
+
+	/**
+	 * Compute the repulsion and attraction forces of each iteration in parallel
+	 * (see {@link FRKernel}). The resulting layout is the same as that of the
+	 * sequential computation.
+	 * 
+	 * @param parallel true to use the common {@link ForkJoinPool}, false to
+	 *                 compute sequentially (default).
+	 * @return this layout.
+	 */
+	public FRLayout setParallel(boolean parallel) {
+		this.parallel = parallel;
+		return this;
+	}
+
+	/**
+	 * Set the maximum number of iterations (default 600).
+	 * 
+	 * @param maxIterations the iteration budget.
+	 * @return this layout.
+	 */
+	public FRLayout setMaxIterations(int maxIterations) {
+		if (maxIterations < 1)
+			throw new IllegalArgumentException("Iteration budget must be >= 1 [" + maxIterations + "]");
+		this.maxIterations = maxIterations;
+		return this;
+	}
+
+	/**
+	 * Set the cooling schedule (default {@link CoolingSchedule#Linear Linear}).
+	 * 
+	 * @param cooling the cooling schedule.
+	 * @return this layout.
+	 */
+	public FRLayout setCooling(CoolingSchedule cooling) {
+		this.cooling = cooling;
+		return this;
+	}
+
+	/**
+	 * Stop iterating once the layout has settled. The energy of an iteration is
+	 * the sum of the force magnitudes on all vertices. Iterations stop when the
+	 * mean force per vertex is less than tolerance * k, where k is the ideal
+	 * spring length. With tolerance = 0 (the default) all iterations are run.
+	 * 
+	 * @param tolerance convergence threshold relative to the ideal spring length.
+	 * @return this layout.
+	 */
+	public FRLayout setConvergence(double tolerance) {
+		if (tolerance < 0.0)
+			throw new IllegalArgumentException("Convergence tolerance must be >= 0 [" + tolerance + "]");
+		this.tolerance = tolerance;
+		return this;
+	}
+
+	/**
+	 * Re-settle only the neighbourhood of some nodes, e.g. after a child or edge
+	 * has been added. Vertices within the given number of hops of the changed
+	 * nodes move; all others are pinned at their current position but still
+	 * attract, and repel nearby moving vertices (see
+	 * {@link FRKernel#setFree(Collection, int, double)}). Because the existing drawing is kept, the result is not rescaled
+	 * and moved vertices are confined to the
+	 * {@link ILayout#getFittingFrame() fitting frame}. Iterations only gather
+	 * forces for the moving vertices, so each costs O(m*n) for m moving vertices
+	 * rather than O(n^2).
+	 * 
+	 * @param changed new or changed nodes, or null for a full layout (default).
+	 * @param hops    neighbourhood size (number of edges away from a changed
+	 *                node).
+	 * @return this layout.
+	 */
+	public FRLayout setIncremental(Collection<LayoutNode> changed, int hops) {
+		if (hops < 0)
+			throw new IllegalArgumentException("Neighbourhood size must be >= 0 [" + hops + "]");
+		this.changed = changed;
+		this.hops = hops;
+		return this;
+	}
+
+	/**
+	 * Start from the current node positions (e.g. those saved with the project)
+	 * rather than treating them as a random initial state. The drawing is scaled
+	 * to the size of a settled layout and then run at a starting temperature of
+	 * k/10 (instead of 0.1) for a sixth of the iteration budget. After small
+	 * edits this is several times faster than a full layout, and vertices move
+	 * on average by less than half an edge length.
+	 * 
+	 * @param warmStart true to start from the current positions, false for a
+	 *                  full layout (default).
+	 * @return this layout.
+	 */
+	public FRLayout setWarmStart(boolean warmStart) {
+		this.warmStart = warmStart;
+		return this;
+	}
+
+	/**
+	 * @return number of iterations run by the last call to
+	 *         {@link #compute(double)}.
+	 */
+	public int getIterations() {
+		return iterations;
+	}
+
+	/**
+	 * @return energy (sum of force magnitudes) of the last iteration run by
+	 *         {@link #compute(double)}.
+	 */
+	public double getEnergy() {
+		return energy;
+	}
+
+	/**
+	 * @return nodes whose position was set by the last call to
+	 *         {@link #compute(double)}: all nodes of a full layout but only the
+	 *         neighbourhood of the changed nodes of an incremental one.
+	 */
+	public List<LayoutNode> getMoved() {
+		return moved;
+	}
+
+	/* Current kernel positions mapped as they would be drawn */
+	private Map<LayoutNode, Point2D> snapshot(FRKernel kernel) {
+		int n = kernel.size();
+		double[] xs = new double[n];
+		double[] ys = new double[n];
+		kernel.positions(xs, ys);
+		Rectangle2D to = ILayout.getFittingFrame();
+		Rectangle2D from = to;
+		if (changed == null) {
+			double minX = Double.POSITIVE_INFINITY;
+			double minY = Double.POSITIVE_INFINITY;
+			double maxX = Double.NEGATIVE_INFINITY;
+			double maxY = Double.NEGATIVE_INFINITY;
+			for (int i = 0; i < n; i++) {
+				minX = Math.min(minX, xs[i]);
+				minY = Math.min(minY, ys[i]);
+				maxX = Math.max(maxX, xs[i]);
+				maxY = Math.max(maxY, ys[i]);
 			}
+			from = ILayout.getBoundingFrame(new Point2D.Double(minX, minY), new Point2D.Double(maxX, maxY));
+		}
+		Map<LayoutNode, Point2D> result = new HashMap<>();
+		for (int i = 0; i < n; i++) {
+			double x = ILayout.rescale(xs[i], from.getMinX(), from.getMaxX(), to.getMinX(), to.getMaxX());
+			double y = ILayout.rescale(ys[i], from.getMinY(), from.getMaxY(), to.getMinY(), to.getMaxY());
+			result.put(vertices.get(i).getNode(), new Point2D.Double(x, y));
 		}
+		return result;
 	}
 
-	private FRVertex Node2Vertex(LayoutNode vn) {
-		for (FRVertex v : vertices)
-			if (v.getNode().id().equals(vn.id()))
-				return v;
+	private double meanEdgeLength(double ifNone) {
+		double sum = 0;
+		for (Duple<FRVertex, FRVertex> e : edges)
+			sum += Math.hypot(e.getFirst().getX() - e.getSecond().getX(), e.getFirst().getY() - e.getSecond().getY());
+		if (sum > 0)
+			return sum / edges.size();
+		return ifNone;
+	}
+
+	private static FRVertex Node2Vertex(Map<String, FRVertex> index, LayoutNode vn) {
+		FRVertex v = index.get(vn.id());
+		if (v != null)
+			return v;
 		throw new NullPointerException("Unable to find a vertex for " + vn.toShortString());
 	}
 
 	@Override
 	public ILayout compute(double jitter) {
-		final int interations = 600;
+		return compute(jitter, null);
+	}
+
+	@Override
+	public ILayout compute(double jitter, LayoutMonitor monitor) {
+		FRKernel kernel = new FRKernel(vertices, edges, Duple::getFirst, Duple::getSecond).setTheta(theta);
+		if (parallel)
+			kernel.setPool(ForkJoinPool.commonPool());
 		/* ideal spring length */
-		final double k = Math.sqrt(1.0 / vertices.size());
+		double k = Math.sqrt(1.0 / vertices.size());
 		/* initial temperature */
-		final double t0 = 0.1;
-
-		double t = t0; // set initial temperature
-		for (int i = 0; i < interations; i++) {
-			for (int a = 0; a < vertices.size(); a++) {
-				FRVertex v = vertices.get(a);
-				for (int b = a + 1; b < vertices.size(); b++) {
-					FRVertex u = vertices.get(b);
-					/* double force = */v.setRepulsionDisplacement(u, k);
-				}
+		double t0 = 0.1;
+		if (changed != null) {
+			List<FRVertex> seeds = new ArrayList<>();
+			for (LayoutNode n : changed) {
+				FRVertex v = vertexIndex.get(n.id());
+				if (v != null)
+					seeds.add(v);
 			}
+			/*
+			 * The drawing has been rescaled since it was laid out, so take the spacing
+			 * from its mean edge length.
+			 */
+			double length = meanEdgeLength(k);
+			k = length / EDGES_PER_K;
+			t0 = INCREMENTAL_T0 * length / maxIterations;
+			kernel.setFree(seeds, hops, FREE_RADIUS * k);
+		}
+		int budget = maxIterations;
+		kernel.read();
+		if (warmStart && changed == null) {
+			/*
+			 * The saved drawing was normalised to the fitting frame. Scale it back to
+			 * the size of a settled layout, where edges are about 8k long.
+			 */
+			double length = meanEdgeLength(0);
+			if (length > 0)
+				kernel.scale(8.0 * k / length);
+			t0 = 0.1 * k;
+			budget = Math.max(1, maxIterations / 6);
+		}
+		final double threshold = tolerance * k * kernel.freeSize();
 
-			for (Duple<FRVertex, FRVertex> e : edges) {
-				/* double force = */ e.getFirst().setAttractionDisplacement(e.getSecond(), k);
-			}
+		iterations = 0;
+		energy = 0;
+		double t = t0; // set initial temperature
+		while (iterations < budget) {
+			kernel.forces(k);
 
-			/* double energy = 0; */
-			for (FRVertex v : vertices) {
-				/* energy += */v.displace(t);
-			}
+			energy = kernel.displace(t);
 
 			// lower the temperature
-			t = cool(t, i, t0, interations);
+			t = cooling.cool(t, iterations, t0, budget);
 
+			iterations++;
+			if (energy < threshold)
+				break;
+			if (monitor != null) {
+				if (monitor.isCancelled())
+					return this;
+				if (monitor.isDue(iterations))
+					monitor.publish(snapshot(kernel));
+			}
 		}
 
+		kernel.write();
+		List<FRVertex> free = kernel.freeVertices();
+
 		if (jitter > 0.0) {
 			Random rnd = new Pcg32();
-			for (IVertex v : vertices)
+			for (IVertex v : free)
 				v.jitter(jitter, rnd);
 		}
 
-		Point2D min = new Point2D.Double(Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY);
-		Point2D max = new Point2D.Double(Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY);
-		for (IVertex v : vertices)
-			v.getLayoutBounds(min, max);
+		if (changed == null) {
+			Point2D min = new Point2D.Double(Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY);
+			Point2D max = new Point2D.Double(Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY);
+			for (IVertex v : vertices)
+				v.getLayoutBounds(min, max);
 
-		for (IVertex v : vertices)
-			v.normalise(ILayout.getBoundingFrame(min, max), ILayout.getFittingFrame());
+			for (IVertex v : vertices)
+				v.normalise(ILayout.getBoundingFrame(min, max), ILayout.getFittingFrame());
+		} else {
+			// keep the existing drawing: confine moved vertices to the frame
+			Rectangle2D frame = ILayout.getFittingFrame();
+			for (IVertex v : free) {
+				double x = Math.max(frame.getMinX(), Math.min(frame.getMaxX(), v.getX()));
+				double y = Math.max(frame.getMinY(), Math.min(frame.getMaxY(), v.getY()));
+				v.setLocation(x, y);
+			}
+		}
 
 		// Arrange isolated nodes down the RHS
 		for (int i = 0; i < isolated.size(); i++) {
 			IVertex v = isolated.get(i);
 			v.setLocation(1.07, (double) i / (double) isolated.size());
 		}
+		moved = new ArrayList<>();
+		for (FRVertex v : free)
+			moved.add(v.getNode());
+		for (FRVertex v : isolated)
+			moved.add(v.getNode());
 		return this;
 	}
 
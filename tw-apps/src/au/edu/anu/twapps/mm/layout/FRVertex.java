@@ -49,6 +49,11 @@ public class FRVertex extends VertexAdapter {
 	 * Vertices without edges are excluded from the computation
 	 */
 	private boolean hasEdges;
+	/**
+	 * Position in the layout's vertex list: fixes the direction in which
+	 * coincident vertices are pushed apart.
+	 */
+	private int index;
 
 	/**
 	 * Construct a vertex wrapper for a {@link LayoutNode}.
@@ -83,6 +88,17 @@ public class FRVertex extends VertexAdapter {
 		return attrApply(this, other, k);
 	}
 
+	/**
+	 * Add to the displacement accumulated for this iteration.
+	 * 
+	 * @param dx x displacement
+	 * @param dy y displacement
+	 */
+	public void addDisplacement(double dx, double dy) {
+		fx += dx;
+		fy += dy;
+	}
+
 	/**
 	 * Update the node position with the displacement limited by temperature
 	 * 
@@ -113,6 +129,24 @@ public class FRVertex extends VertexAdapter {
 		hasEdges = b;
 	}
 
+	/**
+	 * Setter for {@link #index index}
+	 * 
+	 * @param index position of this vertex in the layout's vertex list.
+	 */
+	public void setIndex(int index) {
+		this.index = index;
+	}
+
+	/**
+	 * Getter for {@link #index index}
+	 * 
+	 * @return position of this vertex in the layout's vertex list.
+	 */
+	public int getIndex() {
+		return index;
+	}
+
 	/**
 	 * Getter for {@link #hasEdges hasEdges}
 	 * 
@@ -133,13 +167,16 @@ public class FRVertex extends VertexAdapter {
 	private static double repApply(FRVertex p, FRVertex q, double k) {
 		double dx = q.getX() - p.getX();
 		double dy = q.getY() - p.getY();
-		double dist2 = dx * dx + dy * dy;
-		while (dist2 == 0) {
-			dx = 5 - Math.round(Math.random() * 10);
-			dy = 5 - Math.round(Math.random() * 10);
-			dist2 = dx * dx + dy * dy;
+		if (dx == 0 && dy == 0) {
+			double ang = coincidentAngle(Math.max(p.index, q.index), Math.min(p.index, q.index));
+			dx = k * Math.cos(ang);
+			dy = k * Math.sin(ang);
+			if (q.index < p.index) {
+				dx = -dx;
+				dy = -dy;
+			}
 		}
-		double force = fRepulsion(k, Math.sqrt(dist2));
+		double force = fRepulsion(k, Math.sqrt(dx * dx + dy * dy));
 		q.fx += dx * force;
 		q.fy += dy * force;
 		p.fx -= dx * force;
@@ -157,15 +194,21 @@ public class FRVertex extends VertexAdapter {
 	 * @return The force of attraction.
 	 */
 	public static double attrApply(FRVertex p, FRVertex q, double k) {
+		// self-loops have no net effect
+		if (p == q)
+			return 0;
 		double dx = q.getX() - p.getX();
 		double dy = q.getY() - p.getY();
-		double dist2 = dx * dx + dy * dy;
-		while (dist2 == 0) {
-			dx = 5 - Math.round(Math.random() * 10);
-			dy = 5 - Math.round(Math.random() * 10);
-			dist2 = dx * dx + dy * dy;
+		if (dx == 0 && dy == 0) {
+			double ang = coincidentAngle(Math.max(p.index, q.index), Math.min(p.index, q.index));
+			dx = k * Math.cos(ang);
+			dy = k * Math.sin(ang);
+			if (q.index < p.index) {
+				dx = -dx;
+				dy = -dy;
+			}
 		}
-		double force = fAttract(k, Math.sqrt(dist2));
+		double force = fAttract(k, Math.sqrt(dx * dx + dy * dy));
 		q.fx -= dx * force;
 		q.fy -= dy * force;
 		p.fx += dx * force;
@@ -173,6 +216,21 @@ public class FRVertex extends VertexAdapter {
 		return force;
 	}
 
+	/**
+	 * Direction in which to push apart two coincident vertices. It depends only on
+	 * the pair of indices so that repeated runs give the same layout.
+	 * 
+	 * @param i index of one vertex
+	 * @param j index of the other vertex
+	 * @return angle in radians, pointing from j towards i.
+	 */
+	public static double coincidentAngle(int i, int j) {
+		double a = ((Math.min(i, j) * 31 + Math.max(i, j)) % 360) * Math.PI / 180.0;
+		if (i < j)
+			return a + Math.PI;
+		return a;
+	}
+
 	/**
 	 * @param k ideal spring length
 	 * @param d distance between any two nodes
@@ -31,6 +31,8 @@ package au.edu.anu.twapps.mm.layout;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 /**
  * @author Ian Davies - 10 Jan. 2019
@@ -101,4 +103,45 @@ public interface ILayout {
 	 */
 	public ILayout compute(double jitterFrac);
 
+	/**
+	 * Compute the layout under the control of a monitor. Iterative layouts check
+	 * the monitor for cancellation and publish intermediate positions; the
+	 * default simply computes the layout unless already cancelled.
+	 * 
+	 * @param jitterFrac Random offset of final node positions (relative to drawing
+	 *                   area dimensions)
+	 * @param monitor    cancellation and progress monitor (may be null).
+	 * @return this layout class.
+	 */
+	public default ILayout compute(double jitterFrac, LayoutMonitor monitor) {
+		if (monitor != null && monitor.isCancelled())
+			return this;
+		return compute(jitterFrac);
+	}
+
+	/**
+	 * Compute the layout on another thread. Cancelling the returned future
+	 * cancels the monitor, so the computation stops at its next check. Node
+	 * positions are written by the computing thread when the layout completes;
+	 * the UI should only read them once the future is done and should not edit
+	 * the graph in the meantime.
+	 * 
+	 * @param jitterFrac Random offset of final node positions (relative to drawing
+	 *                   area dimensions)
+	 * @param monitor    cancellation and progress monitor (may be null).
+	 * @param executor   executor to run the computation.
+	 * @return future of this layout class.
+	 */
+	public default CompletableFuture<ILayout> computeAsync(double jitterFrac, LayoutMonitor monitor,
+			Executor executor) {
+		// without a monitor of its own the caller still needs cancelling to stop it
+		LayoutMonitor m = monitor == null ? new LayoutMonitor() : monitor;
+		CompletableFuture<ILayout> result = CompletableFuture.supplyAsync(() -> compute(jitterFrac, m), executor);
+		result.whenComplete((layout, e) -> {
+			if (result.isCancelled())
+				m.cancel();
+		});
+		return result;
+	}
+
 }
@@ -0,0 +1,106 @@
+/**************************************************************************
+ *  TW-APPS - Applications used by 3Worlds                                *
+ *                                                                        *
+ *  Copyright 2018: Jacques Gignoux & Ian D. Davies                       *
+ *       jacques.gignoux@upmc.fr                                          *
+ *       ian.davies@anu.edu.au                                            * 
+ *                                                                        *
+ *  TW-APPS contains ModelMaker and ModelRunner, programs used to         *
+ *  construct and run 3Worlds configuration graphs. All code herein is    *
+ *  independent of UI implementation.                                     *
+ *                                                                        *
+ **************************************************************************                                       
+ *  This file is part of TW-APPS (3Worlds applications).                  *
+ *                                                                        *
+ *  TW-APPS is free software: you can redistribute it and/or modify       *
+ *  it under the terms of the GNU General Public License as published by  *
+ *  the Free Software Foundation, either version 3 of the License, or     *
+ *  (at your option) any later version.                                   *
+ *                                                                        *
+ *  TW-APPS is distributed in the hope that it will be useful,            *
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *  GNU General Public License for more details.                          *                         
+ *                                                                        *
+ *  You should have received a copy of the GNU General Public License     *
+ *  along with TW-APPS.                                                   *
+ *  If not, see <https://www.gnu.org/licenses/gpl.html>                   *
+  **************************************************************************/
+package au.edu.anu.twapps.mm.layout;
+
+import java.awt.geom.Point2D;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import au.edu.anu.twapps.mm.layoutGraph.LayoutNode;
+
+/**
+ * Connects a layout computed off the UI thread (see
+ * {@link ILayout#computeAsync(double, LayoutMonitor, java.util.concurrent.Executor)
+ * computeAsync}) to its caller. The caller can cancel the computation and can
+ * receive intermediate positions, for animation, every so many iterations.
+ * <p>
+ * Intermediate positions are snapshots in the unit drawing frame. They are
+ * delivered on the computing thread and never written to the nodes, so the
+ * listener is responsible for handing them over to the UI thread.
+ * </p>
+ */
+public class LayoutMonitor {
+	private final int cadence;
+	private final Consumer<Map<LayoutNode, Point2D>> listener;
+	private volatile boolean cancelled;
+
+	/**
+	 * A monitor that only supports cancellation.
+	 */
+	public LayoutMonitor() {
+		this(0, null);
+	}
+
+	/**
+	 * @param cadence  number of iterations between intermediate positions (0 for
+	 *                 none).
+	 * @param listener receiver of intermediate positions (may be null).
+	 */
+	public LayoutMonitor(int cadence, Consumer<Map<LayoutNode, Point2D>> listener) {
+		if (cadence < 0)
+			throw new IllegalArgumentException("Publishing cadence must be >= 0 [" + cadence + "]");
+		this.cadence = cadence;
+		this.listener = listener;
+	}
+
+	/**
+	 * Ask the layout to stop. The layout stops at its next check and leaves the
+	 * node positions unchanged.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * @return true if the layout has been asked to stop.
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * @param iteration number of iterations completed.
+	 * @return true if intermediate positions should be published after this
+	 *         iteration.
+	 */
+	public boolean isDue(int iteration) {
+		return listener != null && cadence > 0 && iteration % cadence == 0;
+	}
+
+	/**
+	 * Hand intermediate positions to the listener.
+	 * 
+	 * @param positions snapshot of node positions.
+	 */
+	public void publish(Map<LayoutNode, Point2D> positions) {
+		if (listener != null)
+			listener.accept(positions);
+	}
+
+}
@@ -53,5 +53,10 @@ public enum LayoutType {
 	 * Force directed graph.
 	 */
 	SpringGraph,
+	/**
+	 * Force directed graph computed over successively coarsened versions of the
+	 * graph. Suited to large graphs.
+	 */
+	MultilevelGraph,
 	// LombardiGraph, to finish
 }
@@ -34,6 +34,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 import au.edu.anu.omhtk.rng.Pcg32;
 import au.edu.anu.twapps.mm.layoutGraph.LayoutEdge;
@@ -53,6 +54,9 @@ public class LmbLayout implements ILayout {
 	private List<LmbVertex> isolated;
 	// from / to
 	private Map<LmbVertex, Map<LmbVertex, LmbEdge>> adjMat;
+	/* look-up of vertices by node id */
+	private Map<String, LmbVertex> vertexIndex;
+	private boolean parallel;
 
 	/**
 	 * @param graph WIP
@@ -73,6 +77,12 @@ public class LmbLayout implements ILayout {
 		}
 		/* sort for predictability */
 		vertices.sort((v1,v2)->v1.id().compareTo(v2.id()));
+		vertexIndex = new HashMap<>();
+		for (int i = 0; i < vertices.size(); i++) {
+			// same order as the kernel's indices
+			vertices.get(i).setIndex(i);
+			vertexIndex.put(vertices.get(i).id(), vertices.get(i));
+		}
 //		vertices.sort(new Comparator<IVertex>() {
 //
 //			@Override
@@ -129,12 +139,23 @@ public class LmbLayout implements ILayout {
 				if (v.degree() == 0)
 					isolated.add(v);
 
-			for (LmbVertex v : isolated)
-				vertices.remove(v);
+			vertices.removeIf(v -> v.degree() == 0);
 		}
 
 	}
 
+	/**
+	 * Compute the repulsion and attraction forces of each iteration in parallel
+	 * (see {@link FRKernel}).
+	 * 
+	 * @param parallel true to use the common {@link ForkJoinPool}.
+	 * @return this layout.
+	 */
+	public LmbLayout setParallel(boolean parallel) {
+		this.parallel = parallel;
+		return this;
+	}
+
 	/**
 	 * @param e WIP
 	 * @param n1 WIP
@@ -156,10 +177,7 @@ public class LmbLayout implements ILayout {
 	 * @return WIP
 	 */
 	private IVertex Node2Vertex(LayoutNode vn) {
-		for (IVertex v : vertices)
-			if (v.getNode().id().equals(vn.id()))
-				return v;
-		return null;
+		return vertexIndex.get(vn.id());
 	}
 
 	@Override
@@ -197,23 +215,33 @@ public class LmbLayout implements ILayout {
 		int maxDeterministicShuffle = 1;
 		while (factorial(maxDeterministicShuffle + 1) < shuffleSamples)
 			maxDeterministicShuffle += 1;
+		FRKernel kernel = null;
+		if (parallel)
+			kernel = new FRKernel(vertices, edges, LmbEdge::getP, LmbEdge::getQ).setPool(ForkJoinPool.commonPool());
 		double t = t0; // set initial temperature
 		// Repulsion
 //		boolean done = false;
 		for (int i = 0; i < interations; i++) {
-			for (int a = 0; a < vertices.size(); a++) {
-				LmbVertex v = vertices.get(a);
-				for (int b = a + 1; b < vertices.size(); b++) {
-					LmbVertex u = vertices.get(b);
-					/* double force = */v.setRepulsionDisplacement(u, k);
-//					if (!done)System.out.println(v.id()+"<-->"+u.id());
+			if (kernel != null) {
+				// Repulsion and attraction
+				kernel.read();
+				kernel.forces(k);
+				kernel.applyForces();
+			} else {
+				for (int a = 0; a < vertices.size(); a++) {
+					LmbVertex v = vertices.get(a);
+					for (int b = a + 1; b < vertices.size(); b++) {
+						LmbVertex u = vertices.get(b);
+						/* double force = */v.setRepulsionDisplacement(u, k);
+//						if (!done)System.out.println(v.id()+"<-->"+u.id());
+					}
 				}
-			}
 
-			// Attraction
-			for (LmbEdge e : edges) {
-				/* double force = */e.setAttractionDisplacement(k);
-//				if (!done)System.out.println(e.getP().id()+"-><-"+e.getQ().id());
+				// Attraction
+				for (LmbEdge e : edges) {
+					/* double force = */e.setAttractionDisplacement(k);
+//					if (!done)System.out.println(e.getP().id()+"-><-"+e.getQ().id());
+				}
 			}
 //			done = true;
 			// shuffle edge order
@@ -0,0 +1,410 @@
+/**************************************************************************
+ *  TW-APPS - Applications used by 3Worlds                                *
+ *                                                                        *
+ *  Copyright 2018: Jacques Gignoux & Ian D. Davies                       *
+ *       jacques.gignoux@upmc.fr                                          *
+ *       ian.davies@anu.edu.au                                            * 
+ *                                                                        *
+ *  TW-APPS contains ModelMaker and ModelRunner, programs used to         *
+ *  construct and run 3Worlds configuration graphs. All code herein is    *
+ *  independent of UI implementation.                                     *
+ *                                                                        *
+ **************************************************************************                                       
+ *  This file is part of TW-APPS (3Worlds applications).                  *
+ *                                                                        *
+ *  TW-APPS is free software: you can redistribute it and/or modify       *
+ *  it under the terms of the GNU General Public License as published by  *
+ *  the Free Software Foundation, either version 3 of the License, or     *
+ *  (at your option) any later version.                                   *
+ *                                                                        *
+ *  TW-APPS is distributed in the hope that it will be useful,            *
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *  GNU General Public License for more details.                          *                         
+ *                                                                        *
+ *  You should have received a copy of the GNU General Public License     *
+ *  along with TW-APPS.                                                   *
+ *  If not, see <https://www.gnu.org/licenses/gpl.html>                   *
+  **************************************************************************/
+package au.edu.anu.twapps.mm.layout;
+
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import au.edu.anu.omhtk.rng.Pcg32;
+import au.edu.anu.twapps.mm.layoutGraph.LayoutEdge;
+import au.edu.anu.twapps.mm.layoutGraph.LayoutNode;
+import fr.cnrs.iees.omugi.graph.impl.TreeGraph;
+import fr.cnrs.iees.omhtk.utils.Duple;
+
+/**
+ * <p>
+ * A multilevel force-directed layout (Walshaw, C., 2000. A multilevel
+ * algorithm for force-directed graph drawing. In International Symposium
+ * on Graph Drawing (pp. 171-182). Springer, Berlin, Heidelberg).
+ * </p>
+ * <p>
+ * The graph is repeatedly coarsened by matching each vertex with an
+ * unmatched neighbour of least degree; unmatched leaves are then merged
+ * into their neighbour's group, which collapses the fans of children
+ * common in configuration trees. The coarsest graph is laid out with the
+ * full {@link FRLayout} schedule. Each finer level starts from the
+ * positions of its coarse groups and is refined with a short, cool
+ * {@link FRKernel} pass. The ideal spring length at each level is
+ * sqrt(1/n) for that level's n, so all levels occupy a similar area.
+ * </p>
+ * <p>
+ * Refinement passes use Barnes-Hut repulsion (theta = 0.8 by default) and
+ * the layout is deterministic.
+ * </p>
+ */
+public class MLLayout implements ILayout {
+	/* Stop coarsening at this number of vertices */
+	private static final int COARSEST = 50;
+	/* Stop coarsening when a level is no smaller than this fraction of the last */
+	private static final double MIN_SHRINK = 0.9;
+
+	private List<FRVertex> vertices;
+	/* edge end points as vertex indices */
+	private int[] edgeP;
+	private int[] edgeQ;
+	/* vertices excluded from the alg. These are lined up on the RH side. */
+	private List<FRVertex> isolated;
+	private double theta = 0.8;
+	private boolean parallel;
+	private int coarseIterations = 600;
+	private int refineIterations = 50;
+	/* number of levels of the last computation */
+	private int levels;
+
+	/**
+	 * Build a multilevel force-directed layout
+	 * 
+	 * @param graph                   The layout graph
+	 * @param includeParentChildEdges Include parent-child edges in the display
+	 * @param includeCrossLinks       Include cross-link edges in the display
+	 * @param sideline                Place any isolated vertices to one side
+	 */
+	public MLLayout(TreeGraph<LayoutNode, LayoutEdge> graph, boolean includeParentChildEdges,
+			boolean includeCrossLinks, boolean sideline) {
+		vertices = new ArrayList<>();
+		isolated = new ArrayList<>();
+		List<Duple<FRVertex, FRVertex>> edges = FRLayout.collect(graph, includeParentChildEdges, includeCrossLinks,
+				sideline, vertices, isolated);
+		for (int i = 0; i < vertices.size(); i++)
+			vertices.get(i).setIndex(i);
+		edgeP = new int[edges.size()];
+		edgeQ = new int[edges.size()];
+		for (int e = 0; e < edges.size(); e++) {
+			edgeP[e] = edges.get(e).getFirst().getIndex();
+			edgeQ[e] = edges.get(e).getSecond().getIndex();
+		}
+	}
+
+	/**
+	 * Set the Barnes-Hut opening criterion used at every level (default 0.8). See
+	 * {@link FRLayout#setBarnesHut(double)}.
+	 * 
+	 * @param theta Barnes-Hut opening criterion (0 for exact repulsion).
+	 * @return this layout.
+	 */
+	public MLLayout setBarnesHut(double theta) {
+		if (theta < 0.0)
+			throw new IllegalArgumentException("Barnes-Hut theta must be >= 0 [" + theta + "]");
+		this.theta = theta;
+		return this;
+	}
+
+	/**
+	 * Compute forces in parallel (see {@link FRLayout#setParallel(boolean)}).
+	 * 
+	 * @param parallel true to use the common {@link ForkJoinPool}.
+	 * @return this layout.
+	 */
+	public MLLayout setParallel(boolean parallel) {
+		this.parallel = parallel;
+		return this;
+	}
+
+	/**
+	 * Set the iteration budgets (defaults 600 and 50).
+	 * 
+	 * @param coarse iterations for the coarsest level.
+	 * @param refine iterations for each refinement level.
+	 * @return this layout.
+	 */
+	public MLLayout setIterations(int coarse, int refine) {
+		if (coarse < 1 || refine < 1)
+			throw new IllegalArgumentException("Iteration budgets must be >= 1 [" + coarse + "," + refine + "]");
+		this.coarseIterations = coarse;
+		this.refineIterations = refine;
+		return this;
+	}
+
+	/**
+	 * @return number of levels (including the original graph) of the last call to
+	 *         {@link #compute(double)}.
+	 */
+	public int getLevels() {
+		return levels;
+	}
+
+	@Override
+	public ILayout compute(double jitter) {
+		return compute(jitter, null);
+	}
+
+	@Override
+	public ILayout compute(double jitter, LayoutMonitor monitor) {
+		int n = vertices.size();
+		/* coarsen: maps[l] takes the vertices of level l to those of level l+1 */
+		List<int[]> maps = new ArrayList<>();
+		List<int[]> ps = new ArrayList<>();
+		List<int[]> qs = new ArrayList<>();
+		List<Integer> sizes = new ArrayList<>();
+		ps.add(edgeP);
+		qs.add(edgeQ);
+		sizes.add(n);
+		while (sizes.get(sizes.size() - 1) > COARSEST) {
+			int l = sizes.size() - 1;
+			int[] map = new int[sizes.get(l)];
+			int nc = coarsen(sizes.get(l), ps.get(l), qs.get(l), map);
+			if (nc > MIN_SHRINK * sizes.get(l))
+				break;
+			maps.add(map);
+			List<int[]> coarseEdges = coarseEdges(map, ps.get(l), qs.get(l));
+			ps.add(coarseEdges.get(0));
+			qs.add(coarseEdges.get(1));
+			sizes.add(nc);
+		}
+		levels = sizes.size();
+
+		/* start the coarsest level from the centroids of the current positions */
+		int top = levels - 1;
+		double[] xs = new double[sizes.get(top)];
+		double[] ys = new double[sizes.get(top)];
+		int[] count = new int[sizes.get(top)];
+		for (int i = 0; i < n; i++) {
+			int c = i;
+			for (int[] map : maps)
+				c = map[c];
+			xs[c] += vertices.get(i).getX();
+			ys[c] += vertices.get(i).getY();
+			count[c]++;
+		}
+		for (int c = 0; c < xs.length; c++) {
+			xs[c] /= count[c];
+			ys[c] /= count[c];
+		}
+
+		int iterations = 0;
+		for (int l = top; l >= 0; l--) {
+			int nl = sizes.get(l);
+			if (l < top) {
+				/* prolong: spread the members of each group around its position */
+				double k = Math.sqrt(1.0 / nl);
+				int[] map = maps.get(l);
+				int[] members = new int[sizes.get(l + 1)];
+				for (int i = 0; i < nl; i++)
+					members[map[i]]++;
+				int[] rank = new int[members.length];
+				double[] fineX = new double[nl];
+				double[] fineY = new double[nl];
+				for (int i = 0; i < nl; i++) {
+					int c = map[i];
+					double ang = 2.0 * Math.PI * rank[c]++ / members[c];
+					double r = members[c] > 1 ? 0.5 * k : 0.0;
+					fineX[i] = xs[c] + r * Math.cos(ang);
+					fineY[i] = ys[c] + r * Math.sin(ang);
+				}
+				xs = fineX;
+				ys = fineY;
+			}
+			int[] group = null;
+			if (monitor != null) {
+				// the group of each vertex at this level, for intermediate positions
+				group = new int[n];
+				for (int i = 0; i < n; i++) {
+					int c = i;
+					for (int j = 0; j < l; j++)
+						c = maps.get(j)[c];
+					group[i] = c;
+				}
+			}
+			iterations = relax(nl, ps.get(l), qs.get(l), xs, ys, l == top, monitor, group, iterations);
+			if (iterations < 0)
+				return this;
+		}
+
+		for (int i = 0; i < n; i++)
+			vertices.get(i).setLocation(xs[i], ys[i]);
+
+		if (jitter > 0.0) {
+			Random rnd = new Pcg32();
+			for (IVertex v : vertices)
+				v.jitter(jitter, rnd);
+		}
+
+		Point2D min = new Point2D.Double(Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY);
+		Point2D max = new Point2D.Double(Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY);
+		for (IVertex v : vertices)
+			v.getLayoutBounds(min, max);
+
+		for (IVertex v : vertices)
+			v.normalise(ILayout.getBoundingFrame(min, max), ILayout.getFittingFrame());
+
+		// Arrange isolated nodes down the RHS
+		for (int i = 0; i < isolated.size(); i++) {
+			IVertex v = isolated.get(i);
+			v.setLocation(1.07, (double) i / (double) isolated.size());
+		}
+		return this;
+	}
+
+	/*
+	 * Run FR iterations on one level, either the full schedule or a refinement.
+	 * Returns the number of iterations run so far, or -1 if cancelled.
+	 */
+	private int relax(int n, int[] p, int[] q, double[] xs, double[] ys, boolean coarsest, LayoutMonitor monitor,
+			int[] group, int iterations) {
+		if (n == 0)
+			return iterations;
+		FRKernel kernel = new FRKernel(n, p, q).setTheta(theta);
+		if (parallel)
+			kernel.setPool(ForkJoinPool.commonPool());
+		kernel.setPositions(xs, ys);
+		final double k = Math.sqrt(1.0 / n);
+		final double t0 = coarsest ? 0.1 : k;
+		final int m = coarsest ? coarseIterations : refineIterations;
+		double t = t0;
+		for (int i = 0; i < m; i++) {
+			kernel.forces(k);
+			kernel.displace(t);
+			t = FRLayout.cool(t, i, t0, m);
+			iterations++;
+			if (monitor != null) {
+				if (monitor.isCancelled())
+					return -1;
+				if (monitor.isDue(iterations))
+					monitor.publish(snapshot(kernel, group));
+			}
+		}
+		kernel.positions(xs, ys);
+		return iterations;
+	}
+
+	/*
+	 * Current kernel positions mapped as they would be drawn, each vertex at the
+	 * position of its group
+	 */
+	private Map<LayoutNode, Point2D> snapshot(FRKernel kernel, int[] group) {
+		int n = kernel.size();
+		double[] xs = new double[n];
+		double[] ys = new double[n];
+		kernel.positions(xs, ys);
+		double minX = Double.POSITIVE_INFINITY;
+		double minY = Double.POSITIVE_INFINITY;
+		double maxX = Double.NEGATIVE_INFINITY;
+		double maxY = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < n; i++) {
+			minX = Math.min(minX, xs[i]);
+			minY = Math.min(minY, ys[i]);
+			maxX = Math.max(maxX, xs[i]);
+			maxY = Math.max(maxY, ys[i]);
+		}
+		Rectangle2D from = ILayout.getBoundingFrame(new Point2D.Double(minX, minY), new Point2D.Double(maxX, maxY));
+		Rectangle2D to = ILayout.getFittingFrame();
+		Map<LayoutNode, Point2D> result = new HashMap<>();
+		for (int i = 0; i < vertices.size(); i++) {
+			int c = group[i];
+			double x = ILayout.rescale(xs[c], from.getMinX(), from.getMaxX(), to.getMinX(), to.getMaxX());
+			double y = ILayout.rescale(ys[c], from.getMinY(), from.getMaxY(), to.getMinY(), to.getMaxY());
+			result.put(vertices.get(i).getNode(), new Point2D.Double(x, y));
+		}
+		return result;
+	}
+
+	/*
+	 * Fill map with the coarse vertex of each vertex and return the number of
+	 * coarse vertices.
+	 */
+	private static int coarsen(int n, int[] p, int[] q, int[] map) {
+		int[] start = new int[n + 1];
+		for (int e = 0; e < p.length; e++)
+			if (p[e] != q[e]) {
+				start[p[e] + 1]++;
+				start[q[e] + 1]++;
+			}
+		for (int i = 0; i < n; i++)
+			start[i + 1] += start[i];
+		int[] adj = new int[start[n]];
+		int[] fill = new int[n];
+		for (int e = 0; e < p.length; e++)
+			if (p[e] != q[e]) {
+				adj[start[p[e]] + fill[p[e]]++] = q[e];
+				adj[start[q[e]] + fill[q[e]]++] = p[e];
+			}
+		// visit vertices in order of increasing degree (then index)
+		Integer[] order = new Integer[n];
+		for (int i = 0; i < n; i++)
+			order[i] = i;
+		Arrays.sort(order, (a, b) -> a.equals(b) ? 0
+				: fill[a] != fill[b] ? Integer.compare(fill[a], fill[b]) : Integer.compare(a, b));
+
+		Arrays.fill(map, -1);
+		int nc = 0;
+		for (int v : order)
+			if (map[v] < 0) {
+				int best = -1;
+				for (int a = start[v]; a < start[v + 1]; a++) {
+					int u = adj[a];
+					if (u != v && map[u] < 0 && (best < 0 || fill[u] < fill[best]))
+						best = u;
+				}
+				if (best >= 0) {
+					map[v] = nc;
+					map[best] = nc;
+					nc++;
+				}
+			}
+		// merge unmatched leaves into their neighbour's group
+		for (int v = 0; v < n; v++)
+			if (map[v] < 0 && fill[v] == 1 && map[adj[start[v]]] >= 0)
+				map[v] = map[adj[start[v]]];
+		for (int v = 0; v < n; v++)
+			if (map[v] < 0)
+				map[v] = nc++;
+		return nc;
+	}
+
+	/* Distinct edges between coarse vertices, in order of first appearance */
+	private static List<int[]> coarseEdges(int[] map, int[] p, int[] q) {
+		Set<Long> seen = new HashSet<>();
+		int[] cp = new int[p.length];
+		int[] cq = new int[p.length];
+		int m = 0;
+		for (int e = 0; e < p.length; e++) {
+			int a = Math.min(map[p[e]], map[q[e]]);
+			int b = Math.max(map[p[e]], map[q[e]]);
+			if (a != b && seen.add(((long) a << 32) | b)) {
+				cp[m] = a;
+				cq[m] = b;
+				m++;
+			}
+		}
+		List<int[]> result = new ArrayList<>();
+		result.add(Arrays.copyOf(cp, m));
+		result.add(Arrays.copyOf(cq, m));
+		return result;
+	}
+
+}
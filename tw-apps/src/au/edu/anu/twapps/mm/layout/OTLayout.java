@@ -31,7 +31,6 @@ package au.edu.anu.twapps.mm.layout;
 
 import java.awt.geom.Point2D;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
 
@@ -92,14 +91,13 @@ public class OTLayout implements ILayout {
 
 	@Override
 	public ILayout compute(double jitter) {
-		OTVertex.maxLevels = 0;
-		Arrays.fill(OTVertex.levels, 0);
+		OTLevels levels = new OTLevels();
 
-		root.firstWalk(0, 1);
+		root.firstWalk(0, 1, levels);
 
-		determineDepths();
+		levels.accumulate();
 
-		root.secondWalk(null, -root.getPrelim(), 0);
+		root.secondWalk(null, -root.getPrelim(), 0, levels);
 
 		if (jitter > 0) {
 			Random rnd = new Pcg32();
@@ -119,12 +117,4 @@ public class OTLayout implements ILayout {
 		return this;
 	}
 
-	/**
-	 * Set the tree depth level for each vertex.
-	 */
-	private static void determineDepths() {
-		for (int i = 1; i < OTVertex.maxLevels; ++i)
-			OTVertex.levels[i] += OTVertex.levels[i - 1];
-	}
-
 }
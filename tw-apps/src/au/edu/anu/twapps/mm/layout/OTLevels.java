@@ -0,0 +1,72 @@
+/**************************************************************************
+ *  TW-APPS - Applications used by 3Worlds                                *
+ *                                                                        *
+ *  Copyright 2018: Jacques Gignoux & Ian D. Davies                       *
+ *       jacques.gignoux@upmc.fr                                          *
+ *       ian.davies@anu.edu.au                                            * 
+ *                                                                        *
+ *  TW-APPS contains ModelMaker and ModelRunner, programs used to         *
+ *  construct and run 3Worlds configuration graphs. All code herein is    *
+ *  independent of UI implementation.                                     *
+ *                                                                        *
+ **************************************************************************                                       
+ *  This file is part of TW-APPS (3Worlds applications).                  *
+ *                                                                        *
+ *  TW-APPS is free software: you can redistribute it and/or modify       *
+ *  it under the terms of the GNU General Public License as published by  *
+ *  the Free Software Foundation, either version 3 of the License, or     *
+ *  (at your option) any later version.                                   *
+ *                                                                        *
+ *  TW-APPS is distributed in the hope that it will be useful,            *
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *  GNU General Public License for more details.                          *                         
+ *                                                                        *
+ *  You should have received a copy of the GNU General Public License     *
+ *  along with TW-APPS.                                                   *
+ *  If not, see <https://www.gnu.org/licenses/gpl.html>                   *
+  **************************************************************************/
+package au.edu.anu.twapps.mm.layout;
+
+/**
+ * The depth positions of one {@link OTLayout} computation. Each computation
+ * has its own instance, so several ordered tree layouts can be computed
+ * concurrently.
+ */
+public class OTLevels {
+	private double[] levels = new double[10];
+	private int maxLevels = 0;
+
+	/**
+	 * Record that a vertex needs the given spacing at the given level.
+	 * 
+	 * @param level    tree level.
+	 * @param distance spacing required.
+	 */
+	public void update(int level, double distance) {
+		if (levels.length <= level) {
+			double[] b = new double[3 * level / 2 + 1];
+			System.arraycopy(levels, 0, b, 0, levels.length);
+			levels = b;
+		}
+		levels[level] = Math.max(levels[level], distance);
+		maxLevels = Math.max(maxLevels, level);
+	}
+
+	/**
+	 * Convert the spacing of each level into its position.
+	 */
+	public void accumulate() {
+		for (int i = 1; i < maxLevels; ++i)
+			levels[i] += levels[i - 1];
+	}
+
+	/**
+	 * @param level tree level.
+	 * @return position of the level.
+	 */
+	public double get(int level) {
+		return levels[level];
+	}
+
+}
@@ -29,6 +29,9 @@
 
 package au.edu.anu.twapps.mm.layout;
 
+import java.util.ArrayDeque;
+import java.util.Deque;
+
 import au.edu.anu.twapps.mm.layoutGraph.LayoutNode;
 
 /**
@@ -43,8 +46,6 @@ public class OTVertex extends TreeVertexAdapter {
 	private double _mod;
 	private double _shift;
 	private double _change;
-	protected static int maxLevels = 0;
-	protected static double[] levels = new double[10];
 	private static final double distance = 1.0;
 
 	/**
@@ -57,64 +58,89 @@ public class OTVertex extends TreeVertexAdapter {
 		super(parent, node);
 	}
 
+	/* A vertex in the course of a tree walk */
+	private static class Walk {
+		private final OTVertex vertex;
+		private final int depth;
+		private final double m;
+		private OTVertex next;
+		private int index;
+		private OTVertex pending;
+		private OTVertex defaultAncestor;
+
+		private Walk(OTVertex vertex, int depth, double m) {
+			this.vertex = vertex;
+			this.depth = depth;
+			this.m = m;
+		}
+	}
+
 	/**
-	 * Applied recursively to all children as well as the function 'apportion'.
+	 * Applied to all children (post-order) as well as the function 'apportion'.
 	 * After spacing out the children by calling ExecuteShifts, the node is placed
-	 * at the midpoint of its outermost children.
+	 * at the midpoint of its outermost children. The tree is walked with an
+	 * explicit stack so its depth is not limited by the call stack.
 	 * 
-	 * @param num   Ordinal position in a list of siblings.
-	 * @param depth tree depth
+	 * @param num    Ordinal position in a list of siblings.
+	 * @param depth  tree depth
+	 * @param levels level positions of the layout being computed.
 	 */
-	public void firstWalk(int num, int depth) {
+	public void firstWalk(int num, int depth, OTLevels levels) {
+		Deque<Walk> stack = new ArrayDeque<>();
+		Walk start = startFirstWalk(num, depth, levels);
+		if (start != null)
+			stack.push(start);
+		while (!stack.isEmpty()) {
+			Walk w = stack.peek();
+			if (w.pending != null) {
+				// the pending child's sub-tree is done
+				w.defaultAncestor = w.pending.apportion(w.defaultAncestor);
+				w.pending = null;
+				w.next = w.next.nextSibling();
+				w.index++;
+			}
+			if (w.next != null) {
+				w.pending = w.next;
+				Walk child = w.next.startFirstWalk(w.index, w.depth + 1, levels);
+				if (child != null)
+					stack.push(child);
+			} else {
+				stack.pop();
+				w.vertex.endFirstWalk();
+			}
+		}
+	}
+
+	/* Place a leaf, or return the walk of an internal vertex's children */
+	private Walk startFirstWalk(int num, int depth, OTLevels levels) {
 		setNumber(num);
-		updateDepths(depth);
+		levels.update(depth, distance);
 		if (isChildless()) {
 			setPrelim(0.0);
 			OTVertex leftSibling = prevSibling();
 			if (leftSibling != null)
 				setPrelim(leftSibling.getPrelim() + distance);
-		} else {
-			OTVertex leftMost = getFirstChild();
-			OTVertex defaultAncestor = leftMost;
-			OTVertex child = leftMost;
-			for (int i = 0; child != null; ++i, child = child.nextSibling()) {
-				child.firstWalk(i, depth + 1);
-				defaultAncestor = child.apportion(defaultAncestor);
-			}
-
-			executeShifts();
-
-			double midpoint = 0.5 * (leftMost.getPrelim() + getLastChild().getPrelim());
-
-			OTVertex w = prevSibling();
-			if (w != null) {
-				setPrelim(w.getPrelim() + distance);
-				setMod(getPrelim() - midpoint);
-			} else {
-				setPrelim(midpoint);
-			}
-
+			return null;
 		}
+		Walk result = new Walk(this, depth, 0.0);
+		result.next = getFirstChild();
+		result.defaultAncestor = result.next;
+		return result;
 	}
 
-	/**
-	 * Update levels structure with the given level.
-	 * 
-	 * @param nLevels Number of levels required.
-	 */
-	private static void updateDepths(int nLevels) {
-		if (levels.length <= nLevels)
-			levels = resize(levels, 3 * nLevels / 2);
-		levels[nLevels] = Math.max(levels[nLevels], OTVertex.distance);
-		maxLevels = Math.max(maxLevels, nLevels);
-	}
+	/* Place an internal vertex once its children are placed */
+	private void endFirstWalk() {
+		executeShifts();
 
-	private static final double[] resize(double[] a, int size) {
-		if (a.length >= size)
-			return a;
-		double[] b = new double[size];
-		System.arraycopy(a, 0, b, 0, a.length);
-		return b;
+		double midpoint = 0.5 * (getFirstChild().getPrelim() + getLastChild().getPrelim());
+
+		OTVertex w = prevSibling();
+		if (w != null) {
+			setPrelim(w.getPrelim() + distance);
+			setMod(getPrelim() - midpoint);
+		} else {
+			setPrelim(midpoint);
+		}
 	}
 
 	private OTVertex getFirstChild() {
@@ -125,26 +151,14 @@ public class OTVertex extends TreeVertexAdapter {
 		return (OTVertex) getChildren().get(getChildren().size() - 1);
 	}
 
-	private OTVertex prevSibling() {
-		OTVertex parent = (OTVertex) getParent();
-		if (parent != null) {
-			int idx = parent.getChildren().indexOf(this);
-			idx--;
-			if (idx >= 0)
-				return (OTVertex) parent.getChildren().get(idx);
-		}
-		return null;
+	@Override
+	public OTVertex prevSibling() {
+		return (OTVertex) super.prevSibling();
 	}
 
-	private OTVertex nextSibling() {
-		OTVertex parent = (OTVertex) getParent();
-		if (parent != null) {
-			int idx = parent.getChildren().indexOf(this);
-			idx++;
-			if (idx < parent.getChildren().size())
-				return (OTVertex) parent.getChildren().get(idx);
-		}
-		return null;
+	@Override
+	public OTVertex nextSibling() {
+		return (OTVertex) super.nextSibling();
 	}
 
 	/**
@@ -307,21 +321,24 @@ public class OTVertex extends TreeVertexAdapter {
 	}
 
 	/**
-	 * Computes all real x-coords by summing the modifiers recursively.
+	 * Computes all real x-coords by summing the modifiers down the tree.
 	 * 
-	 * @param p     The vertex to set.
-	 * @param m     The modifier
-	 * @param depth current depth.
+	 * @param p      The vertex to set.
+	 * @param m      The modifier
+	 * @param depth  current depth.
+	 * @param levels level positions of the layout being computed.
 	 */
-	public void secondWalk(OTVertex p, double m, int depth) {
-		double y = getPrelim() + m;
-		double x = OTVertex.levels[depth];
-		setLocation(x, y);
-		depth += 1;
-		if (!isChildless()) {
-			for (OTVertex child = getFirstChild(); child != null; child = child.nextSibling()) {
-				child.secondWalk(this, m + getMod(), depth);
-			}
+	public void secondWalk(OTVertex p, double m, int depth, OTLevels levels) {
+		Deque<Walk> stack = new ArrayDeque<>();
+		stack.push(new Walk(this, depth, m));
+		while (!stack.isEmpty()) {
+			Walk w = stack.pop();
+			OTVertex v = w.vertex;
+			double y = v.getPrelim() + w.m;
+			double x = levels.get(w.depth);
+			v.setLocation(x, y);
+			for (int i = v.getChildren().size() - 1; i >= 0; i--)
+				stack.push(new Walk((OTVertex) v.getChildren().get(i), w.depth + 1, w.m + v.getMod()));
 		}
 	}
 
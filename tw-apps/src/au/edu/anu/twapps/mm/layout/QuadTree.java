@@ -0,0 +1,300 @@
+/**************************************************************************
+ *  TW-APPS - Applications used by 3Worlds                                *
+ *                                                                        *
+ *  Copyright 2018: Jacques Gignoux & Ian D. Davies                       *
+ *       jacques.gignoux@upmc.fr                                          *
+ *       ian.davies@anu.edu.au                                            * 
+ *                                                                        *
+ *  TW-APPS contains ModelMaker and ModelRunner, programs used to         *
+ *  construct and run 3Worlds configuration graphs. All code herein is    *
+ *  independent of UI implementation.                                     *
+ *                                                                        *
+ **************************************************************************                                       
+ *  This file is part of TW-APPS (3Worlds applications).                  *
+ *                                                                        *
+ *  TW-APPS is free software: you can redistribute it and/or modify       *
+ *  it under the terms of the GNU General Public License as published by  *
+ *  the Free Software Foundation, either version 3 of the License, or     *
+ *  (at your option) any later version.                                   *
+ *                                                                        *
+ *  TW-APPS is distributed in the hope that it will be useful,            *
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *  GNU General Public License for more details.                          *                         
+ *                                                                        *
+ *  You should have received a copy of the GNU General Public License     *
+ *  along with TW-APPS.                                                   *
+ *  If not, see <https://www.gnu.org/licenses/gpl.html>                   *
+  **************************************************************************/
+
+package au.edu.anu.twapps.mm.layout;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ * A point-region quadtree used to approximate the repulsion forces of
+ * {@link FRLayout} in O(n log n) time per iteration.
+ * </p>
+ * <p>
+ * Each cell stores the number of vertices it contains and their centre
+ * of mass. When a cell is far enough away from a vertex (cell width /
+ * distance &lt; theta) its vertices are treated as a single body.
+ * </p>
+ * <p>
+ * Barnes, J. and Hut, P., 1986. A hierarchical O(N log N)
+ * force-calculation algorithm. Nature, 324(6096), pp.446-449.
+ * </p>
+ * The tree is stored in flat arrays and re-used between iterations so
+ * that rebuilding it does not allocate.
+ */
+public class QuadTree {
+	/* Cells are not split below this depth: coincident points share a leaf. */
+	private static final int MAX_DEPTH = 32;
+	private static final int EMPTY = -1;
+
+	private double[] xs;
+	private double[] ys;
+
+	private int nCells;
+	/* lower-left corner and width of each (square) cell */
+	private double[] cellX;
+	private double[] cellY;
+	private double[] cellSize;
+	/* number of vertices and sum of their positions in each cell */
+	private int[] count;
+	private double[] sumX;
+	private double[] sumY;
+	/* four children per cell (EMPTY if absent) */
+	private int[] children;
+	/* first vertex of a leaf or EMPTY if an internal cell */
+	private int[] head;
+	/* linked list of vertices sharing a leaf */
+	private int[] next;
+
+	/**
+	 * Construct an empty tree.
+	 */
+	public QuadTree() {
+		allocateCells(64);
+		next = new int[0];
+	}
+
+	/**
+	 * (Re-)build the tree from the given vertex positions.
+	 * 
+	 * @param xs x positions.
+	 * @param ys y positions.
+	 * @param n  number of vertices to insert.
+	 */
+	public void build(double[] xs, double[] ys, int n) {
+		this.xs = xs;
+		this.ys = ys;
+		if (next.length < n)
+			next = new int[n];
+		double minX = Double.POSITIVE_INFINITY;
+		double minY = Double.POSITIVE_INFINITY;
+		double maxX = Double.NEGATIVE_INFINITY;
+		double maxY = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < n; i++) {
+			minX = Math.min(minX, xs[i]);
+			minY = Math.min(minY, ys[i]);
+			maxX = Math.max(maxX, xs[i]);
+			maxY = Math.max(maxY, ys[i]);
+		}
+		double size = Math.max(maxX - minX, maxY - minY);
+		if (!(size > 0.0))
+			size = 1.0;
+		// Widen slightly so points on the max edge fall inside the root cell.
+		size *= 1.0 + 1e-9;
+		nCells = 0;
+		newCell(minX, minY, size);
+		for (int i = 0; i < n; i++)
+			insert(i);
+	}
+
+	/**
+	 * Compute the repulsion displacement for a range of vertices. The tree is not
+	 * modified, so ranges may be computed concurrently once the tree is built.
+	 * 
+	 * @param indices vertex indices to which the range refers, or null if the range
+	 *                refers directly to vertex indices.
+	 * @param from    start of the range (inclusive).
+	 * @param to      end of the range (exclusive).
+	 * @param k       spacing constant (ideal spring length).
+	 * @param theta   opening criterion. Cells whose width to distance ratio is
+	 *                less than this are treated as a single body.
+	 * @param fx      receives the x displacement of each vertex in the range.
+	 * @param fy      receives the y displacement of each vertex in the range.
+	 */
+	public void repulsion(int[] indices, int from, int to, double k, double theta, double[] fx, double[] fy) {
+		// each caller has its own traversal stack
+		int[] stack = new int[3 * MAX_DEPTH + 4];
+		double[] disp = new double[2];
+		for (int j = from; j < to; j++) {
+			int i = indices == null ? j : indices[j];
+			repulsion(i, k, theta, disp, stack);
+			fx[i] = disp[0];
+			fy[i] = disp[1];
+		}
+	}
+
+	private void repulsion(int i, double k, double theta, double[] disp, int[] stack) {
+		double px = xs[i];
+		double py = ys[i];
+		double fx = 0;
+		double fy = 0;
+		double theta2 = theta * theta;
+		int top = 0;
+		stack[top++] = 0;
+		while (top > 0) {
+			int c = stack[--top];
+			if (count[c] == 0)
+				continue;
+			if (head[c] != EMPTY) {
+				// leaf: exact interaction with each vertex
+				for (int b = head[c]; b != EMPTY; b = next[b])
+					if (b != i) {
+						double dx = px - xs[b];
+						double dy = py - ys[b];
+						if (dx == 0 && dy == 0) {
+							/*
+							 * Coincident vertices: push apart in a direction fixed by the pair so
+							 * the result is reproducible.
+							 */
+							double a = FRVertex.coincidentAngle(i, b);
+							dx = k * Math.cos(a);
+							dy = k * Math.sin(a);
+						}
+						double force = FRVertex.fRepulsion(k, Math.sqrt(dx * dx + dy * dy));
+						fx += dx * force;
+						fy += dy * force;
+					}
+			} else {
+				double n = count[c];
+				double dx = px - sumX[c] / n;
+				double dy = py - sumY[c] / n;
+				double dist2 = dx * dx + dy * dy;
+				double size = cellSize[c];
+				if (size * size < theta2 * dist2 && !contains(c, px, py)) {
+					double force = n * FRVertex.fRepulsion(k, Math.sqrt(dist2));
+					fx += dx * force;
+					fy += dy * force;
+				} else
+					for (int q = 0; q < 4; q++) {
+						int child = children[4 * c + q];
+						if (child != EMPTY)
+							stack[top++] = child;
+					}
+			}
+		}
+		disp[0] = fx;
+		disp[1] = fy;
+	}
+
+	private boolean contains(int c, double px, double py) {
+		return px >= cellX[c] && px <= cellX[c] + cellSize[c] && py >= cellY[c] && py <= cellY[c] + cellSize[c];
+	}
+
+	private void insert(int b) {
+		int c = 0;
+		int depth = 0;
+		while (true) {
+			if (count[c] == 0) {
+				// empty leaf
+				head[c] = b;
+				next[b] = EMPTY;
+				addMass(c, b);
+				return;
+			}
+			if (head[c] != EMPTY) {
+				// occupied leaf
+				if (depth >= MAX_DEPTH) {
+					next[b] = head[c];
+					head[c] = b;
+					addMass(c, b);
+					return;
+				}
+				// split: push the resident vertex down one level
+				int o = head[c];
+				head[c] = EMPTY;
+				int oc = child(c, o);
+				head[oc] = o;
+				next[o] = EMPTY;
+				addMass(oc, o);
+			}
+			addMass(c, b);
+			c = child(c, b);
+			depth++;
+		}
+	}
+
+	private void addMass(int c, int b) {
+		count[c]++;
+		sumX[c] += xs[b];
+		sumY[c] += ys[b];
+	}
+
+	/* get, or make, the child cell of c containing vertex b */
+	private int child(int c, int b) {
+		double half = cellSize[c] / 2.0;
+		int q = 0;
+		double x = cellX[c];
+		double y = cellY[c];
+		if (xs[b] >= x + half) {
+			q += 1;
+			x += half;
+		}
+		if (ys[b] >= y + half) {
+			q += 2;
+			y += half;
+		}
+		int result = children[4 * c + q];
+		if (result == EMPTY) {
+			result = newCell(x, y, half);
+			children[4 * c + q] = result;
+		}
+		return result;
+	}
+
+	private int newCell(double x, double y, double size) {
+		if (nCells == count.length)
+			allocateCells(2 * count.length);
+		int c = nCells++;
+		cellX[c] = x;
+		cellY[c] = y;
+		cellSize[c] = size;
+		count[c] = 0;
+		sumX[c] = 0;
+		sumY[c] = 0;
+		head[c] = EMPTY;
+		Arrays.fill(children, 4 * c, 4 * c + 4, EMPTY);
+		return c;
+	}
+
+	private void allocateCells(int size) {
+		cellX = resize(cellX, size);
+		cellY = resize(cellY, size);
+		cellSize = resize(cellSize, size);
+		sumX = resize(sumX, size);
+		sumY = resize(sumY, size);
+		count = resize(count, size);
+		head = resize(head, size);
+		children = resize(children, 4 * size);
+	}
+
+	private static double[] resize(double[] a, int size) {
+		double[] b = new double[size];
+		if (a != null)
+			System.arraycopy(a, 0, b, 0, a.length);
+		return b;
+	}
+
+	private static int[] resize(int[] a, int size) {
+		int[] b = new int[size];
+		if (a != null)
+			System.arraycopy(a, 0, b, 0, a.length);
+		return b;
+	}
+
+}
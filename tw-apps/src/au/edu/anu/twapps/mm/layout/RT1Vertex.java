@@ -29,6 +29,9 @@
 
 package au.edu.anu.twapps.mm.layout;
 
+import java.util.ArrayDeque;
+import java.util.Deque;
+
 import au.edu.anu.twapps.mm.layoutGraph.LayoutNode;
 import fr.cnrs.iees.uit.space.Distance;
 import fr.cnrs.iees.omhtk.utils.Duple;
@@ -38,6 +41,7 @@ import fr.cnrs.iees.omhtk.utils.Duple;
  */
 public class RT1Vertex extends TreeVertexAdapter {
 	private double radius;// distance to all children
+	private double angleSum;// accumulated angle while locating
 
 	/**
 	 * Construct a vertex wrapper of a {@link LayoutNode} for the {@link RT1Layout}.
@@ -55,13 +59,26 @@ public class RT1Vertex extends TreeVertexAdapter {
 
 	protected void setRadius(double value) {
 		this.radius = value;
-		// determine next radius
-		double nextRadius = 0;
+		Deque<RT1Vertex> stack = new ArrayDeque<>();
+		stack.push(this);
+		while (!stack.isEmpty()) {
+			RT1Vertex v = stack.pop();
+			double nextRadius = v.nextRadius();
+			for (TreeVertexAdapter c : v.getChildren()) {
+				RT1Vertex child = (RT1Vertex) c;
+				child.radius = nextRadius;
+				stack.push(child);
+			}
+		}
+	}
+
+	/* the radius of this vertex's children */
+	private double nextRadius() {
 		int n = getChildren().size();
 		if (n == 0)// leaf
-			return;
+			return 0;
 		else if (n == 1)// children have no siblings.
-			nextRadius = radius / 2.0;
+			return radius / 2.0;
 		else {// find mid point between nearest children
 			double diff = Double.POSITIVE_INFINITY;
 			int idx = 0;
@@ -78,13 +95,8 @@ public class RT1Vertex extends TreeVertexAdapter {
 			double theta2 = theta1 + diff / 2.0;
 			Duple<Double, Double> p1 = polarToCartesian(theta1, radius);
 			Duple<Double, Double> p2 = polarToCartesian(theta2, radius);
-			double distance = Distance.euclidianDistance(p1.getFirst(), p1.getSecond(), p2.getFirst(), p2.getSecond());
-			nextRadius = distance;
+			return Distance.euclidianDistance(p1.getFirst(), p1.getSecond(), p2.getFirst(), p2.getSecond());
 		}
-
-		// update recursively;
-		for (TreeVertexAdapter cf : getChildren())
-			((RT1Vertex) cf).setRadius(nextRadius);
 	}
 
 	private static final double w = Math.PI; // = 45 deg for two children
@@ -103,9 +115,7 @@ public class RT1Vertex extends TreeVertexAdapter {
 	}
 
 	protected int getIndex() {
-		if (hasParent())
-			return getParent().getChildren().indexOf(this);
-		return 0;
+		return getSiblingIndex();
 	}
 
 	private static Duple<Double, Double> polarToCartesian(double radiant, double magnitude) {
@@ -115,31 +125,39 @@ public class RT1Vertex extends TreeVertexAdapter {
 	}
 
 	/**
-	 * Recursively translate relative polar coords to absolute Cartesian.
+	 * Translate relative polar coords to absolute Cartesian for this vertex and its
+	 * descendants.
 	 * 
 	 * @param depth    path depth.
 	 * @param angleSum accumulated sum of angles across siblings.
 	 */
 	public void locate(int depth, double angleSum) {
-		if (!hasParent()) {
-			setLocation(0, 0);
-			for (TreeVertexAdapter c : getChildren()) {
-				RT1Vertex child = (RT1Vertex) c;
-				child.locate(depth + 1, child.getAngle());
-			}
-		} else {
-			double distance = ((RT1Vertex) getParent()).getRadius();
-			Duple<Double, Double> p = RT1Vertex.polarToCartesian(angleSum, distance);
-			double px = getParent().getX();
-			double py = getParent().getY();
-			double cx = p.getFirst();
-			double cy = p.getSecond();
-			setLocation(px + cx, py + cy);
-			for (TreeVertexAdapter c : getChildren()) {
-				RT1Vertex child = (RT1Vertex) c;
-				child.locate(depth + 1, angleSum + child.getAngle());
+		this.angleSum = angleSum;
+		Deque<RT1Vertex> stack = new ArrayDeque<>();
+		stack.push(this);
+		while (!stack.isEmpty()) {
+			RT1Vertex v = stack.pop();
+			if (!v.hasParent()) {
+				v.setLocation(0, 0);
+				for (TreeVertexAdapter c : v.getChildren()) {
+					RT1Vertex child = (RT1Vertex) c;
+					child.angleSum = child.getAngle();
+					stack.push(child);
+				}
+			} else {
+				double distance = ((RT1Vertex) v.getParent()).getRadius();
+				Duple<Double, Double> p = RT1Vertex.polarToCartesian(v.angleSum, distance);
+				double px = v.getParent().getX();
+				double py = v.getParent().getY();
+				double cx = p.getFirst();
+				double cy = p.getSecond();
+				v.setLocation(px + cx, py + cy);
+				for (TreeVertexAdapter c : v.getChildren()) {
+					RT1Vertex child = (RT1Vertex) c;
+					child.angleSum = v.angleSum + child.getAngle();
+					stack.push(child);
+				}
 			}
-
 		}
 	}
 
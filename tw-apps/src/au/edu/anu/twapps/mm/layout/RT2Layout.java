@@ -65,6 +65,8 @@ public class RT2Layout implements ILayout {
 
 	private RT2Vertex root;
 	private List<TreeVertexAdapter> isolated;
+	/* wedge weighting exponent; NaN for equal leaf angles */
+	private double exponent = Double.NaN;
 
 	/**
 	 * @param rootNode                {@link LayoutNode} to use as the layout root
@@ -81,15 +83,41 @@ public class RT2Layout implements ILayout {
 			root.getIsolated(isolated, includeParentChildEdges, includeCrossLinksEdges);
 	}
 
+	/**
+	 * Share the circle out by sub-tree weight. By default every leaf gets an equal
+	 * angle and each parent sits midway between its outermost leaves, so a
+	 * sub-tree with many leaves crowds out the rest. When weighted, each vertex
+	 * gets a wedge of its parent's wedge proportional to size^exponent, where size
+	 * is the number of vertices in its sub-tree, and sits in the centre of its
+	 * wedge. An exponent of 1 is close to the default; 0 shares each wedge equally
+	 * amongst siblings; 0.5 is a compromise that keeps large sub-trees readable
+	 * without crowding out small ones.
+	 * 
+	 * @param exponent weighting exponent (&gt;= 0), or NaN for equal leaf angles
+	 *                 (default).
+	 * @return this layout.
+	 */
+	public RT2Layout setWeighted(double exponent) {
+		if (exponent < 0.0)
+			throw new IllegalArgumentException("Weighting exponent must be >= 0 [" + exponent + "]");
+		this.exponent = exponent;
+		return this;
+	}
+
 	@Override
 	public ILayout compute(double jitter) {
-		List<RT2Vertex> leaves = new ArrayList<>();
-		root.collectLeaves(leaves);
-		double angle = 0;
-		double inc = 360.0 / leaves.size();
-		for (RT2Vertex leaf : leaves) {
-			leaf.setAngle(angle);
-			angle += inc;
+		if (!Double.isNaN(exponent))
+			root.updateWedges(0.0, 360.0, exponent);
+		else {
+			List<RT2Vertex> leaves = new ArrayList<>();
+			root.collectLeaves(leaves);
+			double angle = 0;
+			double inc = 360.0 / leaves.size();
+			for (RT2Vertex leaf : leaves) {
+				leaf.setAngle(angle);
+				angle += inc;
+			}
+			root.updateSpans();
 		}
 		root.locate();
 
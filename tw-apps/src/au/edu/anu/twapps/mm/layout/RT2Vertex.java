@@ -40,6 +40,11 @@ public class RT2Vertex extends TreeVertexAdapter {
 
 	private int _depth;
 	private double _angle;
+	/* angles of the left- and right-most leaves of this sub-tree */
+	private double _leftAngle;
+	private double _rightAngle;
+	/* number of vertices in this sub-tree */
+	private int _size;
 
 	/**
 	 * Construct a vertex wrapper of a {@link LayoutNode} for the {@link RT2Layout}.
@@ -73,34 +78,85 @@ public class RT2Vertex extends TreeVertexAdapter {
 	}
 
 	/**
-	 * Get the angle of this vertex relative to its parent.
+	 * Get the angle of this vertex relative to its parent. For an internal vertex
+	 * this is the mid-point of the angles of its outermost leaves, as cached by
+	 * the last call to {@link #updateSpans()}.
 	 * 
 	 * @return angle in radians.
 	 */
 	public double getAngle() {
 		if (!hasParent())
 			return 0.0;
-		if (isChildless())
-			return _angle;
-		else {
-			RT2Vertex left = getLefthand();
-			RT2Vertex right = getRightHand();
-			double la = left.getAngle();
-			double ra = right.getAngle();
-			return la + (ra - la) / 2.0;
+		return _angle;
+	}
+
+	/**
+	 * Cache the angle span of every sub-tree of this vertex in one bottom-up pass.
+	 * Call once the leaf angles have been set.
+	 */
+	public void updateSpans() {
+		List<TreeVertexAdapter> vertices = subTree();
+		// reverse pre-order visits children before their parent
+		for (int i = vertices.size() - 1; i >= 0; i--) {
+			RT2Vertex v = (RT2Vertex) vertices.get(i);
+			if (v.isChildless()) {
+				v._leftAngle = v._angle;
+				v._rightAngle = v._angle;
+			} else {
+				v._leftAngle = ((RT2Vertex) v.getChildren().get(0))._leftAngle;
+				v._rightAngle = ((RT2Vertex) v.getChildren().get(v.getChildren().size() - 1))._rightAngle;
+				v._angle = v._leftAngle + (v._rightAngle - v._leftAngle) / 2.0;
+			}
 		}
 	}
 
 	/**
-	 * Recursively collect all leaf vertices.
+	 * Share the given angle range out as nested wedges and set the angle of every
+	 * vertex of this sub-tree to the centre of its wedge. Siblings share their
+	 * parent's wedge in proportion to size^exponent, where size is the number of
+	 * vertices in their sub-tree. Sizes and wedges are each computed in one pass.
+	 * 
+	 * @param from     start of the angle range (degrees).
+	 * @param to       end of the angle range (degrees).
+	 * @param exponent weighting exponent (0 for equal shares amongst siblings).
+	 */
+	public void updateWedges(double from, double to, double exponent) {
+		List<TreeVertexAdapter> vertices = subTree();
+		for (int i = vertices.size() - 1; i >= 0; i--) {
+			RT2Vertex v = (RT2Vertex) vertices.get(i);
+			v._size = 1;
+			for (TreeVertexAdapter c : v.getChildren())
+				v._size += ((RT2Vertex) c)._size;
+		}
+		_leftAngle = from;
+		_rightAngle = to;
+		_angle = from + (to - from) / 2.0;
+		for (TreeVertexAdapter tv : vertices) {
+			RT2Vertex v = (RT2Vertex) tv;
+			double total = 0;
+			for (TreeVertexAdapter tc : v.getChildren())
+				total += Math.pow(((RT2Vertex) tc)._size, exponent);
+			double start = v._leftAngle;
+			double span = v._rightAngle - v._leftAngle;
+			for (TreeVertexAdapter tc : v.getChildren()) {
+				RT2Vertex c = (RT2Vertex) tc;
+				c._leftAngle = start;
+				c._rightAngle = start + span * Math.pow(c._size, exponent) / total;
+				c._angle = c._leftAngle + (c._rightAngle - c._leftAngle) / 2.0;
+				start = c._rightAngle;
+			}
+		}
+	}
+
+	/**
+	 * Collect all leaf vertices of this sub-tree, in order.
 	 * 
 	 * @param leaves current leaf collection.
 	 */
 	public void collectLeaves(List<RT2Vertex> leaves) {
-		if (isChildless())
-			leaves.add(this);
-		for (TreeVertexAdapter c : getChildren())
-			((RT2Vertex) c).collectLeaves(leaves);
+		for (TreeVertexAdapter v : subTree())
+			if (v.isChildless())
+				leaves.add((RT2Vertex) v);
 	}
 
 	private void updatePosition(double angle) {
@@ -110,24 +166,12 @@ public class RT2Vertex extends TreeVertexAdapter {
 	}
 
 	/**
-	 * Recursively update position to Cartesian coordinates.
+	 * Update position to Cartesian coordinates for this vertex and its
+	 * descendants.
 	 */
 	public void locate() {
-		updatePosition(getAngle());
-		for (TreeVertexAdapter c : getChildren())
-			((RT2Vertex) c).locate();
-	}
-
-	private RT2Vertex getLefthand() {
-		if (isChildless())
-			return this;
-		return ((RT2Vertex) getChildren().get(0)).getLefthand();
-	}
-
-	private RT2Vertex getRightHand() {
-		if (isChildless())
-			return this;
-		return ((RT2Vertex) getChildren().get(getChildren().size() - 1)).getRightHand();
+		for (TreeVertexAdapter v : subTree())
+			((RT2Vertex) v).updatePosition(((RT2Vertex) v).getAngle());
 	}
 
 }
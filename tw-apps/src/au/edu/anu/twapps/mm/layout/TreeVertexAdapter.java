@@ -31,7 +31,9 @@ package au.edu.anu.twapps.mm.layout;
 
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
 import java.util.Random;
 
@@ -47,6 +49,7 @@ import fr.cnrs.iees.omugi.graph.Edge;
 public abstract class TreeVertexAdapter extends VertexAdapter implements ITreeVertex<TreeVertexAdapter> {
 	private List<TreeVertexAdapter> _children;
 	private TreeVertexAdapter _parent;
+	private int _siblingIndex;
 
 	/**
 	 * Tree vertex constructor.
@@ -93,34 +96,88 @@ public abstract class TreeVertexAdapter extends VertexAdapter implements ITreeVe
 		return _parent;
 	}
 
+	/**
+	 * @return position of this vertex in its parent's list of children (0 for the
+	 *         root).
+	 */
+	public int getSiblingIndex() {
+		return _siblingIndex;
+	}
+
+	/**
+	 * @return the sibling before this vertex or null if none.
+	 */
+	public TreeVertexAdapter prevSibling() {
+		if (_parent != null && _siblingIndex > 0)
+			return _parent.getChildren().get(_siblingIndex - 1);
+		return null;
+	}
+
+	/**
+	 * @return the sibling after this vertex or null if none.
+	 */
+	public TreeVertexAdapter nextSibling() {
+		if (_parent != null && _siblingIndex < _parent.getChildren().size() - 1)
+			return _parent.getChildren().get(_siblingIndex + 1);
+		return null;
+	}
+
+	/**
+	 * @return this vertex and all its descendants in pre-order (parents before
+	 *         children, children in order).
+	 */
+	public List<TreeVertexAdapter> subTree() {
+		List<TreeVertexAdapter> result = new ArrayList<>();
+		Deque<TreeVertexAdapter> stack = new ArrayDeque<>();
+		stack.push(this);
+		while (!stack.isEmpty()) {
+			TreeVertexAdapter v = stack.pop();
+			result.add(v);
+			for (int i = v.getChildren().size() - 1; i >= 0; i--)
+				stack.push(v.getChildren().get(i));
+		}
+		return result;
+	}
+
 	@Override
 	public void jitter(double f, Random rnd) {
-		super.jitter(f, rnd);
-		for (TreeVertexAdapter c : getChildren())
-			c.jitter(f, rnd);
+		for (TreeVertexAdapter v : subTree())
+			v.jitterVertex(f, rnd);
 	}
 
 	@Override
 	public void getLayoutBounds(Point2D min, Point2D max) {
-		super.getLayoutBounds(min, max);
-		for (TreeVertexAdapter c : getChildren())
-			c.getLayoutBounds(min, max);
+		for (TreeVertexAdapter v : subTree())
+			v.vertexBounds(min, max);
 	}
 
 	@Override
 	public void normalise(Rectangle2D from, Rectangle2D to) {
-		super.normalise(from, to);
-		for (IVertex c : getChildren())
-			c.normalise(from, to);
+		for (TreeVertexAdapter v : subTree())
+			v.normaliseVertex(from, to);
 	}
 
 	/**
-	 * Recursively builds the tree from just those nodes that are currently visible.
+	 * Builds the tree from just those nodes that are currently visible. Each vertex
+	 * records its position amongst its siblings so sibling navigation is O(1). The
+	 * tree is walked with an explicit stack so its depth is not limited by the
+	 * call stack.
 	 * 
-	 * @param vertex  The current vertex.
+	 * @param root    The root vertex.
 	 * @param factory The vertex factory.
 	 */
-	public static void buildSpanningTree(TreeVertexAdapter vertex, ITreeVertexFactory factory) {
+	public static void buildSpanningTree(TreeVertexAdapter root, ITreeVertexFactory factory) {
+		Deque<TreeVertexAdapter> stack = new ArrayDeque<>();
+		stack.push(root);
+		while (!stack.isEmpty()) {
+			TreeVertexAdapter vertex = stack.pop();
+			addChildren(vertex, factory);
+			for (int i = vertex.getChildren().size() - 1; i >= 0; i--)
+				stack.push(vertex.getChildren().get(i));
+		}
+	}
+
+	private static void addChildren(TreeVertexAdapter vertex, ITreeVertexFactory factory) {
 		List<LayoutNode> sortList = new ArrayList<>();
 		String parentId = "";
 		if (vertex.hasParent())
@@ -146,14 +203,14 @@ public abstract class TreeVertexAdapter extends VertexAdapter implements ITreeVe
 //		});
 		for (LayoutNode nChild : sortList) {
 			TreeVertexAdapter vChild = factory.makeVertex(vertex, nChild);
+			vChild._siblingIndex = vertex.getChildren().size();
 			vertex.getChildren().add(vChild);
-			buildSpanningTree(vChild, factory);
 		}
 	}
 
 	/**
-	 * Recursively builds a list of vertices that have no visible edges. These can
-	 * be placed to one side of the display to reduce clutter.
+	 * Builds a list of the vertices of this sub-tree that have no visible edges.
+	 * These can be placed to one side of the display to reduce clutter.
 	 * 
 	 * @param lstIsolated          The accumulating list of isolated vertices.
 	 * @param showParentChildEdges true if these edges are currently displayed.
@@ -162,13 +219,11 @@ public abstract class TreeVertexAdapter extends VertexAdapter implements ITreeVe
 	public void getIsolated(List<TreeVertexAdapter> lstIsolated, boolean showParentChildEdges,
 			boolean showCrossLinkEdges) {
 		if (!showParentChildEdges)
-			if (!showCrossLinkEdges)
-				lstIsolated.add(this);
-			else if (!nodeHasEdgesToVisibleNodes())
-				lstIsolated.add(this);
-		for (TreeVertexAdapter c : getChildren()) {
-			c.getIsolated(lstIsolated, showParentChildEdges, showCrossLinkEdges);
-		}
+			for (TreeVertexAdapter v : subTree())
+				if (!showCrossLinkEdges)
+					lstIsolated.add(v);
+				else if (!v.nodeHasEdgesToVisibleNodes())
+					lstIsolated.add(v);
 	}
 
 }
@@ -89,19 +89,52 @@ public abstract class VertexAdapter implements IVertex {
 
 	@Override
 	public void normalise(Rectangle2D from, Rectangle2D to) {
+		normaliseVertex(from, to);
+	}
+
+	@Override
+	public void getLayoutBounds(Point2D min, Point2D max) {
+		vertexBounds(min, max);
+	}
+
+	@Override
+	public void jitter(double f, Random rnd) {
+		jitterVertex(f, rnd);
+	}
+
+	/**
+	 * Rescale the position of this vertex alone (cf.
+	 * {@link #normalise(Rectangle2D, Rectangle2D)}).
+	 * 
+	 * @param from current layout bounds.
+	 * @param to   target bounds.
+	 */
+	protected void normaliseVertex(Rectangle2D from, Rectangle2D to) {
 		double x = ILayout.rescale(getX(), from.getMinX(), from.getMaxX(), to.getMinX(), to.getMaxX());
 		double y = ILayout.rescale(getY(), from.getMinY(), from.getMaxY(), to.getMinY(), to.getMaxY());
 		setLocation(x, y);
 	}
 
-	@Override
-	public void getLayoutBounds(Point2D min, Point2D max) {
+	/**
+	 * Extend the bounds to include the position of this vertex alone (cf.
+	 * {@link #getLayoutBounds(Point2D, Point2D)}).
+	 * 
+	 * @param min minimum x,y so far.
+	 * @param max maximum x,y so far.
+	 */
+	protected void vertexBounds(Point2D min, Point2D max) {
 		min.setLocation(Math.min(min.getX(), getX()), Math.min(min.getY(), getY()));
 		max.setLocation(Math.max(max.getX(), getX()), Math.max(max.getY(), getY()));
 	}
 
-	@Override
-	public void jitter(double f, Random rnd) {
+	/**
+	 * Randomly offset the position of this vertex alone (cf.
+	 * {@link #jitter(double, Random)}).
+	 * 
+	 * @param f   jitter fraction.
+	 * @param rnd random number generator.
+	 */
+	protected void jitterVertex(double f, Random rnd) {
 		double x = ILayout.jitter(getX(), f, rnd);
 		double y = ILayout.jitter(getY(), f, rnd);
 		setLocation(x, y);
@@ -0,0 +1,129 @@
+/**************************************************************************
+ *  TW-APPS - Applications used by 3Worlds                                *
+ *                                                                        *
+ *  Copyright 2018: Jacques Gignoux & Ian D. Davies                       *
+ *       jacques.gignoux@upmc.fr                                          *
+ *       ian.davies@anu.edu.au                                            * 
+ *                                                                        *
+ *  TW-APPS contains ModelMaker and ModelRunner, programs used to         *
+ *  construct and run 3Worlds configuration graphs. All code herein is    *
+ *  independent of UI implementation.                                     *
+ *                                                                        *
+ **************************************************************************                                       
+ *  This file is part of TW-APPS (3Worlds applications).                  *
+ *                                                                        *
+ *  TW-APPS is free software: you can redistribute it and/or modify       *
+ *  it under the terms of the GNU General Public License as published by  *
+ *  the Free Software Foundation, either version 3 of the License, or     *
+ *  (at your option) any later version.                                   *
+ *                                                                        *
+ *  TW-APPS is distributed in the hope that it will be useful,            *
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *  GNU General Public License for more details.                          *                         
+ *                                                                        *
+ *  You should have received a copy of the GNU General Public License     *
+ *  along with TW-APPS.                                                   *
+ *  If not, see <https://www.gnu.org/licenses/gpl.html>                   *
+  **************************************************************************/
+package au.edu.anu.twapps.mm.layoutGraph;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An aggregate glyph standing in for a group of {@link LayoutNode}s of one
+ * category (sub-tree, see {@link LayoutNode#getCategory()}) at a reduced level
+ * of detail. A cluster is either:
+ * <ul>
+ * <li>a collapsed sub-tree: {@link #getRoot()} is the collapsed child and the
+ * cluster is anchored on its (shown) parent; or</li>
+ * <li>a zoomed-out group: shown nodes of the same category too close together
+ * to be distinguished at the current resolution. {@link #getRoot()} is null and
+ * the cluster is located at the centroid of its {@link #getMembers()}.</li>
+ * </ul>
+ */
+public class LayoutCluster {
+	private final String category;
+	private final LayoutNode root;
+	private final List<LayoutNode> members;
+	// counted on first request: -1 until then
+	private int size;
+	private final double x;
+	private final double y;
+
+	LayoutCluster(LayoutNode root, LayoutNode anchor) {
+		this.category = root.getCategory();
+		this.root = root;
+		this.members = Collections.emptyList();
+		this.size = -1;
+		this.x = anchor.getX();
+		this.y = anchor.getY();
+	}
+
+	LayoutCluster(String category, List<LayoutNode> members) {
+		this.category = category;
+		this.root = null;
+		this.members = Collections.unmodifiableList(members);
+		this.size = members.size();
+		double sx = 0;
+		double sy = 0;
+		for (LayoutNode n : members) {
+			sx += n.getX();
+			sy += n.getY();
+		}
+		this.x = sx / size;
+		this.y = sy / size;
+	}
+
+	/**
+	 * @return The category (sub-tree) of all nodes in this cluster.
+	 */
+	public String getCategory() {
+		return category;
+	}
+
+	/**
+	 * @return Root of the collapsed sub-tree or null if this is a zoomed-out
+	 *         group.
+	 */
+	public LayoutNode getRoot() {
+		return root;
+	}
+
+	/**
+	 * @return The shown nodes aggregated by a zoomed-out group (empty for a
+	 *         collapsed sub-tree).
+	 */
+	public List<LayoutNode> getMembers() {
+		return members;
+	}
+
+	/**
+	 * Number of nodes represented by this cluster. The nodes of a collapsed
+	 * sub-tree are only counted when first asked for, so building a level of
+	 * detail does not walk hidden sub-trees.
+	 * 
+	 * @return Number of nodes represented by this cluster.
+	 */
+	public int size() {
+		if (size < 0)
+			size = root.subTreeSize();
+		return size;
+	}
+
+	/**
+	 * @return X position of the cluster glyph.
+	 */
+	public double getX() {
+		return x;
+	}
+
+	/**
+	 * @return Y position of the cluster glyph.
+	 */
+	public double getY() {
+		return y;
+	}
+
+}
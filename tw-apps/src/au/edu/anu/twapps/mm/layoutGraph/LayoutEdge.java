@@ -53,14 +53,24 @@ public class LayoutEdge extends ALDataEdge {
 	final static String IS_VISIBLE = "visible";
 	private ALEdge configEdge;
 	/**
-	 * These Objects are constructed at startup time. Thus, there is no need to have
-	 * them stored in a property list. To store them in a property list would cause
+	 * These Objects are constructed at startup time (or on first use if the graph
+	 * has a {@link VisualElementFactory}). Thus, there is no need to have them
+	 * stored in a property list. To store them in a property list would cause
 	 * problems when reloading the file with the omugiImporter.
 	 */
 	private Object veText;
 	private Object veSymbol;
 	private Object veArrowhead;
 
+	/**
+	 * Cached copy of the IS_VISIBLE property: unknown until first read, then kept
+	 * in step by {@link #setVisible(boolean)}.
+	 */
+	private static final byte VISIBLE_UNKNOWN = 0;
+	private static final byte VISIBLE_TRUE = 1;
+	private static final byte VISIBLE_FALSE = 2;
+	private byte visible = VISIBLE_UNKNOWN;
+
 	/**
 	 * @param id      Edge {@link Identity}
 	 * @param start   The {@link LayoutNode} start node.
@@ -153,6 +163,7 @@ public class LayoutEdge extends ALDataEdge {
 	 * @throws NullPointerException if the object is null.
 	 */
 	public Object getText() {
+		materialise();
 		if (veText == null)
 			throw new NullPointerException(
 					"Attempt to access null edge text object [" + getDisplayText(ElementDisplayText.RoleName) + "]");
@@ -165,6 +176,7 @@ public class LayoutEdge extends ALDataEdge {
 	 * @return a duple of symbols to represent the edge and arrowhead.
 	 */
 	public Duple<Object, Object> getSymbol() {
+		materialise();
 		return new Duple<Object, Object>(veSymbol, veArrowhead);
 	}
 
@@ -195,6 +207,50 @@ public class LayoutEdge extends ALDataEdge {
 		setText(text);
 	}
 
+	/**
+	 * @return true if the drawing objects of this edge exist.
+	 */
+	public boolean isMaterialised() {
+		return veSymbol != null;
+	}
+
+	/**
+	 * Make the drawing objects of this edge if the graph is in lazy mode and they
+	 * do not yet exist.
+	 * 
+	 * @return true if drawing objects were made.
+	 */
+	public boolean materialise() {
+		VisualElementFactory vef = visualElementFactory();
+		if (vef == null || veSymbol != null)
+			return false;
+		vef.materialise(this);
+		return true;
+	}
+
+	/**
+	 * Release the drawing objects of this edge. This has no effect unless the
+	 * graph is in lazy mode.
+	 */
+	public void releaseVisualElements() {
+		VisualElementFactory vef = visualElementFactory();
+		if (vef == null)
+			return;
+		for (Object o : new Object[] { veSymbol, veArrowhead, veText })
+			if (o != null)
+				vef.release(o);
+		veSymbol = null;
+		veArrowhead = null;
+		veText = null;
+	}
+
+	private VisualElementFactory visualElementFactory() {
+		// nodes and edges of the layout graph share one factory
+		if (startNode().factory() instanceof LayoutGraphFactory)
+			return ((LayoutGraphFactory) startNode().factory()).getVisualElementFactory();
+		return null;
+	}
+
 	/**
 	 * Getter for the visible property value of the VisualEdge. This property is set
 	 * by graph display controls such as collapsing/expanding sub-trees or hiding
@@ -203,9 +259,12 @@ public class LayoutEdge extends ALDataEdge {
 	 * @return true if visible, false otherwise.
 	 */
 	public boolean isVisible() {
-		if (properties().getPropertyValue(IS_VISIBLE) == null)
-			properties().setProperty(IS_VISIBLE, true);
-		return (Boolean) properties().getPropertyValue(IS_VISIBLE);
+		if (visible == VISIBLE_UNKNOWN) {
+			if (properties().getPropertyValue(IS_VISIBLE) == null)
+				properties().setProperty(IS_VISIBLE, true);
+			visible = (Boolean) properties().getPropertyValue(IS_VISIBLE) ? VISIBLE_TRUE : VISIBLE_FALSE;
+		}
+		return visible == VISIBLE_TRUE;
 	}
 
 	/**
@@ -215,6 +274,7 @@ public class LayoutEdge extends ALDataEdge {
 	 */
 	public void setVisible(boolean value) {
 		properties().setProperty(IS_VISIBLE, value);
+		visible = value ? VISIBLE_TRUE : VISIBLE_FALSE;
 	}
 
 }
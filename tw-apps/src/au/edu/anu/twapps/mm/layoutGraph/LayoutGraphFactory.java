@@ -49,6 +49,37 @@ public class LayoutGraphFactory extends TreeGraphFactory implements EditableFact
 
 	private static Map<String, String> vgLabels = new HashMap<>();
 
+	private final LayoutNodeIndex nodeIndex = new LayoutNodeIndex();
+
+	private VisualElementFactory visualElementFactory;
+
+	/**
+	 * @return The spatial index of the positions of all nodes made by this
+	 *         factory.
+	 */
+	public LayoutNodeIndex nodeIndex() {
+		return nodeIndex;
+	}
+
+	/**
+	 * Switch the graph to lazy creation of drawing objects.
+	 * 
+	 * @param visualElementFactory Maker of drawing objects or null to revert to
+	 *                             the view setting all drawing objects itself.
+	 * @return this factory.
+	 */
+	public LayoutGraphFactory setVisualElementFactory(VisualElementFactory visualElementFactory) {
+		this.visualElementFactory = visualElementFactory;
+		return this;
+	}
+
+	/**
+	 * @return Maker of drawing objects or null if not in lazy mode.
+	 */
+	public VisualElementFactory getVisualElementFactory() {
+		return visualElementFactory;
+	}
+
 	/**
 	 * Removes the edge {@link Identity} from the graphs {@link LocalScope}. This is
 	 * necessary if an edge is to be renamed or deleted.
@@ -181,6 +212,8 @@ public class LayoutGraphFactory extends TreeGraphFactory implements EditableFact
 	@Override
 	public void expungeNode(Node node) {
 		scope.removeId(node.id());
+		if (node instanceof LayoutNode)
+			nodeIndex.remove((LayoutNode) node);
 		for (Edge edge : node.edges())
 			expungeEdge(edge);
 		for (TreeGraph<TreeGraphNode, ALEdge> g : graphs)
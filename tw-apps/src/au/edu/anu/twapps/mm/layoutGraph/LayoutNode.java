@@ -29,7 +29,10 @@
 
 package au.edu.anu.twapps.mm.layoutGraph;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Deque;
 import java.util.List;
 import java.util.Map;
 
@@ -89,8 +92,9 @@ public class LayoutNode extends TreeGraphDataNode implements SaveableAsText {
 
 	private TreeGraphDataNode configNode;
 	/**
-	 * These Objects are constructed at startup time. Thus, there is no need to have
-	 * them stored in a property list. To store them in a property list would cause
+	 * These Objects are constructed at startup time (or on first use if the graph
+	 * has a {@link VisualElementFactory}). Thus, there is no need to have them
+	 * stored in a property list. To store them in a property list would cause
 	 * problems when reloading the file with the omugiImporter.
 	 */
 	private Object vnSymbol;
@@ -98,6 +102,30 @@ public class LayoutNode extends TreeGraphDataNode implements SaveableAsText {
 	private Object vnParentLine;
 	private Object vnArrowhead;
 
+	/**
+	 * Cached copies of the IS_VISIBLE and IS_COLLAPSED properties. Layouts and
+	 * views test these in tight loops, so they are read from the property list
+	 * once and then kept in step by the setters.
+	 */
+	private static final byte FLAGS_LOADED = 1;
+	private static final byte FLAG_VISIBLE = 2;
+	private static final byte FLAG_COLLAPSED = 4;
+	private byte flags;
+
+	/**
+	 * The position is held in primitive fields while editing and laying out, and
+	 * only written to the LOCATION_X/Y properties by {@link #storePosition()}
+	 * (before the graph is saved). Unset coordinates are NaN.
+	 */
+	private static final byte POSITION_UNKNOWN = 0;
+	private static final byte POSITION_STORED = 1;
+	private static final byte POSITION_CHANGED = 2;
+	private byte positionState = POSITION_UNKNOWN;
+	private double x = Double.NaN;
+	private double y = Double.NaN;
+	// true while the index has yet to place this node at its current position
+	private boolean indexPending;
+
 	/**
 	 * @param id       The unique {@link Identity} of this node.
 	 * @param props    {@link SimplePropertyList} of node properties.
@@ -105,6 +133,7 @@ public class LayoutNode extends TreeGraphDataNode implements SaveableAsText {
 	 */
 	public LayoutNode(Identity id, SimplePropertyList props, GraphFactory gfactory) {
 		super(id, props, gfactory);
+		register();
 	}
 
 	/**
@@ -113,6 +142,7 @@ public class LayoutNode extends TreeGraphDataNode implements SaveableAsText {
 	 */
 	public LayoutNode(Identity id, GraphFactory factory) {
 		super(id, new SharedPropertyListImpl(LayoutGraphFactory.getNodeKeys()), factory);
+		register();
 	}
 
 	/**
@@ -122,6 +152,40 @@ public class LayoutNode extends TreeGraphDataNode implements SaveableAsText {
 	 */
 	public LayoutNode(Identity id, ReadOnlyPropertyList props, LayoutGraphFactory factory) {
 		super(id, (SimplePropertyList) props, factory);
+		register();
+	}
+
+	// Positions may not be known yet (e.g. during import) so the node is only
+	// registered; the index places it when first queried.
+	private void register() {
+		LayoutNodeIndex index = nodeIndex();
+		if (index != null) {
+			indexPending = true;
+			index.register(this);
+		}
+	}
+
+	private LayoutNodeIndex nodeIndex() {
+		if (factory() instanceof LayoutGraphFactory)
+			return ((LayoutGraphFactory) factory()).nodeIndex();
+		return null;
+	}
+
+	// Only the first move since the index last placed this node reaches the
+	// index; later moves (e.g. every iteration of a layout) cost a flag test.
+	private void moved() {
+		if (indexPending)
+			return;
+		LayoutNodeIndex index = nodeIndex();
+		if (index != null) {
+			indexPending = true;
+			index.register(this);
+		}
+	}
+
+	// called by the index once it has placed (or dropped) this node
+	void indexed() {
+		indexPending = false;
 	}
 
 	/**
@@ -150,9 +214,7 @@ public class LayoutNode extends TreeGraphDataNode implements SaveableAsText {
 	 * @return true if visible, false otherwise.
 	 */
 	public boolean isVisible() {
-		if (properties().getPropertyValue(IS_VISIBLE) == null)
-			properties().setProperty(IS_VISIBLE, true);
-		return (Boolean) properties().getPropertyValue(IS_VISIBLE);
+		return (loadFlags() & FLAG_VISIBLE) != 0;
 	}
 
 	/**
@@ -162,6 +224,28 @@ public class LayoutNode extends TreeGraphDataNode implements SaveableAsText {
 	 */
 	public void setVisible(boolean value) {
 		properties().setProperty(IS_VISIBLE, value);
+		setFlag(FLAG_VISIBLE, value);
+	}
+
+	private byte loadFlags() {
+		if (flags == 0) {
+			if (properties().getPropertyValue(IS_VISIBLE) == null)
+				properties().setProperty(IS_VISIBLE, true);
+			byte f = FLAGS_LOADED;
+			if ((Boolean) properties().getPropertyValue(IS_VISIBLE))
+				f |= FLAG_VISIBLE;
+			if (Boolean.TRUE.equals(properties().getPropertyValue(IS_COLLAPSED)))
+				f |= FLAG_COLLAPSED;
+			flags = f;
+		}
+		return flags;
+	}
+
+	private void setFlag(byte flag, boolean value) {
+		if (value)
+			flags = (byte) (loadFlags() | flag);
+		else
+			flags = (byte) (loadFlags() & ~flag);
 	}
 
 	@Override
@@ -198,6 +282,7 @@ public class LayoutNode extends TreeGraphDataNode implements SaveableAsText {
 	 */
 	public void setCollapse(boolean b) {
 		properties().setProperty(IS_COLLAPSED, b);
+		setFlag(FLAG_COLLAPSED, b);
 	}
 
 	/**
@@ -262,21 +347,27 @@ public class LayoutNode extends TreeGraphDataNode implements SaveableAsText {
 	}
 
 	/**
-	 * Setter to wrap the node's x position property.
+	 * Setter for the node's x position.
 	 * 
 	 * @param x X position.
 	 */
 	public void setX(double x) {
-		properties().setProperty(LOCATION_X, x);
+		loadPosition();
+		this.x = x;
+		positionState = POSITION_CHANGED;
+		moved();
 	}
 
 	/**
-	 * Setter to wrap the node's y position property.
+	 * Setter for the node's y position.
 	 * 
 	 * @param y Y position.
 	 */
 	public void setY(double y) {
-		properties().setProperty(LOCATION_Y, y);
+		loadPosition();
+		this.y = y;
+		positionState = POSITION_CHANGED;
+		moved();
 	}
 
 	/**
@@ -286,26 +377,75 @@ public class LayoutNode extends TreeGraphDataNode implements SaveableAsText {
 	 * @param y Y position.
 	 */
 	public void setPosition(double x, double y) {
-		setX(x);
-		setY(y);
+		this.x = x;
+		this.y = y;
+		positionState = POSITION_CHANGED;
+		moved();
+	}
+
+	/**
+	 * @return true if both coordinates of this node have been set.
+	 */
+	public boolean hasPosition() {
+		loadPosition();
+		return !Double.isNaN(x) && !Double.isNaN(y);
 	}
 
 	/**
-	 * Getter for the node's x property.
+	 * Getter for the node's x position.
 	 * 
-	 * @return X position.
+	 * @return X position (NaN if not set).
 	 */
 	public double getX() {
-		return (Double) properties().getPropertyValue(LOCATION_X);
+		loadPosition();
+		return x;
 	}
 
 	/**
-	 * Getter for the node's y property.
+	 * Getter for the node's y position.
 	 * 
-	 * @return Y position.
+	 * @return Y position (NaN if not set).
 	 */
 	public double getY() {
-		return (Double) properties().getPropertyValue(LOCATION_Y);
+		loadPosition();
+		return y;
+	}
+
+	/**
+	 * Write the position to the node's property list if it has changed since it
+	 * was last read or written. This must be called before the layout graph is
+	 * exported.
+	 */
+	public void storePosition() {
+		if (positionState != POSITION_CHANGED)
+			return;
+		if (!Double.isNaN(x))
+			properties().setProperty(LOCATION_X, x);
+		if (!Double.isNaN(y))
+			properties().setProperty(LOCATION_Y, y);
+		positionState = POSITION_STORED;
+	}
+
+	/**
+	 * Write the positions of all given nodes to their property lists (see
+	 * {@link #storePosition()}).
+	 * 
+	 * @param nodes The nodes of a layout graph.
+	 */
+	public static void storePositions(Iterable<LayoutNode> nodes) {
+		for (LayoutNode node : nodes)
+			node.storePosition();
+	}
+
+	// positions of imported nodes are only in the property list
+	private void loadPosition() {
+		if (positionState != POSITION_UNKNOWN)
+			return;
+		Object px = properties().getPropertyValue(LOCATION_X);
+		Object py = properties().getPropertyValue(LOCATION_Y);
+		x = px == null ? Double.NaN : (Double) px;
+		y = py == null ? Double.NaN : (Double) py;
+		positionState = POSITION_STORED;
 	}
 
 	/**
@@ -359,6 +499,9 @@ public class LayoutNode extends TreeGraphDataNode implements SaveableAsText {
 	 * @throws NullPointerException If objects do not exist.
 	 */
 	public void removeParentLine() {
+		// in lazy mode the line may never have been made
+		if (vnParentLine == null && vnArrowhead == null && visualElementFactory() != null)
+			return;
 		if (vnParentLine != null)
 			vnParentLine = null;
 		else
@@ -386,6 +529,7 @@ public class LayoutNode extends TreeGraphDataNode implements SaveableAsText {
 	 * @return the node drawing object.
 	 */
 	public Object getSymbol() {
+		materialise();
 		return vnSymbol;
 	}
 
@@ -395,6 +539,7 @@ public class LayoutNode extends TreeGraphDataNode implements SaveableAsText {
 	 * @return the node text drawing object.
 	 */
 	public Object getText() {
+		materialise();
 		return vnText;
 	}
 
@@ -404,16 +549,110 @@ public class LayoutNode extends TreeGraphDataNode implements SaveableAsText {
 	 * @return duple of line and arrowhead drawing objects.
 	 */
 	public Duple<Object, Object> getParentLine() {
+		VisualElementFactory vef = visualElementFactory();
+		if (vef != null && vnParentLine == null && getParent() != null)
+			vef.materialiseParentLine(this);
 		return new Duple<Object, Object>(vnParentLine, vnArrowhead);
 	}
 
+	/**
+	 * @return true if the symbol and text drawing objects of this node exist.
+	 */
+	public boolean isMaterialised() {
+		return vnSymbol != null;
+	}
+
+	/**
+	 * Make the drawing objects of this node if the graph is in lazy mode and they
+	 * do not yet exist.
+	 * 
+	 * @return true if drawing objects were made.
+	 */
+	public boolean materialise() {
+		VisualElementFactory vef = visualElementFactory();
+		if (vef == null || vnSymbol != null)
+			return false;
+		vef.materialise(this);
+		return true;
+	}
+
+	/**
+	 * Release the drawing objects of this node and of the line to its parent. This
+	 * has no effect unless the graph is in lazy mode.
+	 */
+	public void releaseVisualElements() {
+		VisualElementFactory vef = visualElementFactory();
+		if (vef == null)
+			return;
+		for (Object o : new Object[] { vnSymbol, vnText, vnParentLine, vnArrowhead })
+			if (o != null)
+				vef.release(o);
+		vnSymbol = null;
+		vnText = null;
+		vnParentLine = null;
+		vnArrowhead = null;
+	}
+
+	/**
+	 * Release the drawing objects of all collapsed nodes of the sub-tree rooted
+	 * at this node, together with those of their edges. This should follow
+	 * {@link au.edu.anu.twapps.mm.GraphVisualiser#collapseTreeFrom
+	 * collapseTreeFrom}. It has no effect unless the graph is in lazy mode.
+	 */
+	public void releaseSubTree() {
+		if (visualElementFactory() == null)
+			return;
+		Deque<LayoutNode> stack = new ArrayDeque<>();
+		stack.push(this);
+		while (!stack.isEmpty()) {
+			LayoutNode node = stack.pop();
+			if (node.isCollapsed()) {
+				node.releaseVisualElements();
+				for (ALEdge edge : node.edges())
+					((LayoutEdge) edge).releaseVisualElements();
+			}
+			for (LayoutNode child : node.getChildren())
+				stack.push(child);
+		}
+	}
+
+	private VisualElementFactory visualElementFactory() {
+		if (factory() instanceof LayoutGraphFactory)
+			return ((LayoutGraphFactory) factory()).getVisualElementFactory();
+		return null;
+	}
+
 	/**
 	 * Getter for the isCollapse node property.
 	 * 
 	 * @return true if collapsed, false otherwise.
 	 */
 	public boolean isCollapsed() {
-		return (Boolean) properties().getPropertyValue(IS_COLLAPSED);
+		return (loadFlags() & FLAG_COLLAPSED) != 0;
+	}
+
+	/**
+	 * @return true if this node is drawn individually: it is visible and not
+	 *         within a collapsed sub-tree.
+	 */
+	public boolean isShown() {
+		return isVisible() && !isCollapsed();
+	}
+
+	/**
+	 * @return Number of nodes in the sub-tree rooted at this node (including this
+	 *         node).
+	 */
+	public int subTreeSize() {
+		int result = 0;
+		Deque<LayoutNode> stack = new ArrayDeque<>();
+		stack.push(this);
+		while (!stack.isEmpty()) {
+			result++;
+			for (LayoutNode child : stack.pop().getChildren())
+				stack.push(child);
+		}
+		return result;
 	}
 
 	/**
@@ -635,34 +874,40 @@ public class LayoutNode extends TreeGraphDataNode implements SaveableAsText {
 		setupParentReference(this, map);
 	}
 
-	private static void setupParentReference(LayoutNode parent, Map<String, List<StringTable>> map) {
-		if (parent == null)
+	private static void setupParentReference(LayoutNode root, Map<String, List<StringTable>> map) {
+		if (root == null)
 			throw new NullPointerException("Parent is null.");
 		if (map == null)
 			throw new NullPointerException(
-					"Map is null when processing parent " + parent.getDisplayText(ElementDisplayText.RoleName));
-		List<StringTable> parentList = map.get(parent.configNode.classId());
-		if (parentList == null)
-			throw new NullPointerException("Archetype error: ParentList is null for parent "
-					+ parent.getDisplayText(ElementDisplayText.RoleName));
-
-		/**
-		 * Check each table and take the first that corresponds to the current set of
-		 * parents. If none (e.g. root) the entry will be null. It follows that this
-		 * method can only be used for a tree with a single root.
-		 */
-		for (StringTable table : parentList) {
-			if (parent.treeMatchesTable(table)) {
-				parent.setParentRef(table);
-				break;
+					"Map is null when processing parent " + root.getDisplayText(ElementDisplayText.RoleName));
+		// pre-order walk with an explicit stack so deep trees can't overflow
+		Deque<LayoutNode> stack = new ArrayDeque<>();
+		stack.push(root);
+		while (!stack.isEmpty()) {
+			LayoutNode parent = stack.pop();
+			List<StringTable> parentList = map.get(parent.configNode.classId());
+			if (parentList == null)
+				throw new NullPointerException("Archetype error: ParentList is null for parent "
+						+ parent.getDisplayText(ElementDisplayText.RoleName));
+
+			/**
+			 * Check each table and take the first that corresponds to the current set of
+			 * parents. If none (e.g. root) the entry will be null. It follows that this
+			 * method can only be used for a tree with a single root.
+			 */
+			for (StringTable table : parentList) {
+				if (parent.treeMatchesTable(table)) {
+					parent.setParentRef(table);
+					break;
+				}
 			}
+			// This is the empty parent table for the root!
+			if (parent.parentTable() == null)
+				parent.setParentRef(parentList.get(0));
+			List<LayoutNode> children = new ArrayList<>(parent.getChildren());
+			for (int i = children.size() - 1; i >= 0; i--)
+				stack.push(children.get(i));
 		}
-		// This is the empty parent table for the root!
-		if (parent.parentTable() == null)
-			parent.setParentRef(parentList.get(0));
-		for (LayoutNode child : parent.getChildren())
-			setupParentReference(child, map);
-
 	}
 
 	/**
@@ -0,0 +1,366 @@
+/**************************************************************************
+ *  TW-APPS - Applications used by 3Worlds                                *
+ *                                                                        *
+ *  Copyright 2018: Jacques Gignoux & Ian D. Davies                       *
+ *       jacques.gignoux@upmc.fr                                          *
+ *       ian.davies@anu.edu.au                                            * 
+ *                                                                        *
+ *  TW-APPS contains ModelMaker and ModelRunner, programs used to         *
+ *  construct and run 3Worlds configuration graphs. All code herein is    *
+ *  independent of UI implementation.                                     *
+ *                                                                        *
+ **************************************************************************                                       
+ *  This file is part of TW-APPS (3Worlds applications).                  *
+ *                                                                        *
+ *  TW-APPS is free software: you can redistribute it and/or modify       *
+ *  it under the terms of the GNU General Public License as published by  *
+ *  the Free Software Foundation, either version 3 of the License, or     *
+ *  (at your option) any later version.                                   *
+ *                                                                        *
+ *  TW-APPS is distributed in the hope that it will be useful,            *
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *  GNU General Public License for more details.                          *                         
+ *                                                                        *
+ *  You should have received a copy of the GNU General Public License     *
+ *  along with TW-APPS.                                                   *
+ *  If not, see <https://www.gnu.org/licenses/gpl.html>                   *
+  **************************************************************************/
+package au.edu.anu.twapps.mm.layoutGraph;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Uniform-grid spatial index over the positions of the {@link LayoutNode}s of
+ * one layout graph. Each {@link LayoutGraphFactory} owns one index and every
+ * node it creates is registered with it. Views can then hit-test and cull
+ * without scanning the graph.
+ * <p>
+ * Coordinates are those of the layout graph (unit space after a layout). The
+ * index is brought up to date lazily: a node that is registered or moved
+ * ({@link LayoutNode#setPosition(double, double)}, and hence every layout) is
+ * only marked as pending, once until it is next placed, and all pending nodes
+ * are placed in the grid in one pass by the next query. Moving a node many
+ * times between queries therefore costs one index update.
+ * <p>
+ * The methods are synchronized so that the index's own structures stay
+ * consistent. Node positions themselves are not safely published between
+ * threads: a query must not run while a layout on another thread is still
+ * writing positions. Query once the layout's future has completed (see
+ * {@link au.edu.anu.twapps.mm.layout.ILayout#computeAsync(double, au.edu.anu.twapps.mm.layout.LayoutMonitor, java.util.concurrent.Executor)
+ * ILayout.computeAsync}).
+ */
+public class LayoutNodeIndex {
+	/**
+	 * Default cell size: a 32 x 32 grid over unit space.
+	 */
+	public static final double DEFAULT_CELL_SIZE = 1.0 / 32.0;
+
+	private static final class Entry {
+		private final LayoutNode node;
+		private double x;
+		private double y;
+		private long cell;
+
+		private Entry(LayoutNode node) {
+			this.node = node;
+		}
+	}
+
+	private static final class Hit {
+		private final LayoutNode node;
+		private final double d2;
+
+		private Hit(LayoutNode node, double d2) {
+			this.node = node;
+			this.d2 = d2;
+		}
+	}
+
+	private final double cellSize;
+	private final Map<Long, List<Entry>> cells = new HashMap<>();
+	private final Map<LayoutNode, Entry> entries = new IdentityHashMap<>();
+	private final Set<LayoutNode> pending = Collections.newSetFromMap(new IdentityHashMap<>());
+
+	/**
+	 * Index with the {@link #DEFAULT_CELL_SIZE}.
+	 */
+	public LayoutNodeIndex() {
+		this(DEFAULT_CELL_SIZE);
+	}
+
+	/**
+	 * @param cellSize Width and height of a grid cell in layout coordinates.
+	 * @throws IllegalArgumentException if cellSize is not &gt; 0.
+	 */
+	public LayoutNodeIndex(double cellSize) {
+		if (!(cellSize > 0))
+			throw new IllegalArgumentException("cellSize must be > 0 [" + cellSize + "]");
+		this.cellSize = cellSize;
+	}
+
+	/**
+	 * @return Width and height of a grid cell.
+	 */
+	public double getCellSize() {
+		return cellSize;
+	}
+
+	/**
+	 * Register a node that is new or has moved. It is placed in the grid by the
+	 * next query (or by {@link #update(LayoutNode)}).
+	 * 
+	 * @param node The node to register.
+	 */
+	public synchronized void register(LayoutNode node) {
+		pending.add(node);
+	}
+
+	/**
+	 * Move (or add) a node to the cell of its current position.
+	 * 
+	 * @param node The node whose position has changed.
+	 */
+	public synchronized void update(LayoutNode node) {
+		pending.remove(node);
+		if (!node.hasPosition()) {
+			remove(node);
+			pending.add(node);
+			return;
+		}
+		node.indexed();
+		double x = node.getX();
+		double y = node.getY();
+		Entry e = entries.get(node);
+		long cell = cellOf(x, y);
+		if (e == null) {
+			e = new Entry(node);
+			entries.put(node, e);
+		} else if (e.cell != cell)
+			removeFromCell(e);
+		else {
+			e.x = x;
+			e.y = y;
+			return;
+		}
+		e.x = x;
+		e.y = y;
+		e.cell = cell;
+		cells.computeIfAbsent(cell, c -> new ArrayList<>(4)).add(e);
+	}
+
+	/**
+	 * Remove a node from the index (e.g. when it is deleted from the graph).
+	 * 
+	 * @param node The node to remove.
+	 */
+	public synchronized void remove(LayoutNode node) {
+		if (pending.remove(node))
+			node.indexed();
+		Entry e = entries.remove(node);
+		if (e != null)
+			removeFromCell(e);
+	}
+
+	/**
+	 * Remove all nodes from the index.
+	 */
+	public synchronized void clear() {
+		for (LayoutNode node : pending)
+			node.indexed();
+		cells.clear();
+		entries.clear();
+		pending.clear();
+	}
+
+	/**
+	 * @return Number of nodes in the index (including pending nodes).
+	 */
+	public synchronized int size() {
+		int result = entries.size();
+		for (LayoutNode node : pending)
+			if (!entries.containsKey(node))
+				result++;
+		return result;
+	}
+
+	/**
+	 * Hit-test: the node closest to the given point within the given radius.
+	 * 
+	 * @param x      X coordinate.
+	 * @param y      Y coordinate.
+	 * @param radius Maximum distance from the point.
+	 * @return The closest node or null if none lies within the radius.
+	 */
+	public synchronized LayoutNode nodeAt(double x, double y, double radius) {
+		flush();
+		LayoutNode result = null;
+		double best = radius * radius;
+		int x0 = index(x - radius);
+		int x1 = index(x + radius);
+		int y0 = index(y - radius);
+		int y1 = index(y + radius);
+		for (Entry e : candidates(x0, y0, x1, y1)) {
+			double dx = e.x - x;
+			double dy = e.y - y;
+			double d2 = dx * dx + dy * dy;
+			if (d2 <= best) {
+				best = d2;
+				result = e.node;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Viewport query: all nodes whose position lies within the given rectangle
+	 * (inclusive).
+	 * 
+	 * @param minX Left edge.
+	 * @param minY Top edge.
+	 * @param maxX Right edge.
+	 * @param maxY Bottom edge.
+	 * @return List of nodes in no particular order.
+	 */
+	public synchronized List<LayoutNode> query(double minX, double minY, double maxX, double maxY) {
+		flush();
+		List<LayoutNode> result = new ArrayList<>();
+		for (Entry e : candidates(index(minX), index(minY), index(maxX), index(maxY)))
+			if (e.x >= minX && e.x <= maxX && e.y >= minY && e.y <= maxY)
+				result.add(e.node);
+		return result;
+	}
+
+	/**
+	 * The k nodes nearest to the given point. The search expands ring by ring
+	 * around the point's cell and stops as soon as no unvisited cell can hold a
+	 * closer node.
+	 * 
+	 * @param x X coordinate.
+	 * @param y Y coordinate.
+	 * @param k Maximum number of nodes to return.
+	 * @return Up to k nodes ordered from nearest to farthest.
+	 * @throws IllegalArgumentException if k &lt; 0.
+	 */
+	public synchronized List<LayoutNode> nearest(double x, double y, int k) {
+		if (k < 0)
+			throw new IllegalArgumentException("k must be >= 0 [" + k + "]");
+		flush();
+		// max-heap of the best k found so far
+		PriorityQueue<Hit> heap = new PriorityQueue<>((a, b) -> Double.compare(b.d2, a.d2));
+		if (k > 0) {
+			int cx = index(x);
+			int cy = index(y);
+			int visited = 0;
+			for (int r = 0; visited < entries.size(); r++) {
+				if (8L * r > cells.size()) {
+					// sparse grid: cheaper to look at the occupied cells directly
+					for (List<Entry> list : cells.values())
+						for (Entry e : list)
+							if (ring(e.cell, cx, cy) >= r)
+								offer(heap, e, x, y, k);
+					break;
+				}
+				for (int i = cx - r; i <= cx + r; i++)
+					for (int j = cy - r; j <= cy + r; j++)
+						if (r == 0 || i == cx - r || i == cx + r || j == cy - r || j == cy + r) {
+							List<Entry> list = cells.get(key(i, j));
+							if (list != null) {
+								visited += list.size();
+								for (Entry e : list)
+									offer(heap, e, x, y, k);
+							}
+						}
+				// any node in ring r+1 or beyond is at least r cells away
+				if (heap.size() == k && heap.peek().d2 <= sqr(r * cellSize))
+					break;
+			}
+		}
+		LayoutNode[] result = new LayoutNode[heap.size()];
+		for (int i = result.length - 1; i >= 0; i--)
+			result[i] = heap.poll().node;
+		return List.of(result);
+	}
+
+	private static void offer(PriorityQueue<Hit> heap, Entry e, double x, double y, int k) {
+		double dx = e.x - x;
+		double dy = e.y - y;
+		double d2 = dx * dx + dy * dy;
+		if (heap.size() < k)
+			heap.add(new Hit(e.node, d2));
+		else if (d2 < heap.peek().d2) {
+			heap.poll();
+			heap.add(new Hit(e.node, d2));
+		}
+	}
+
+	private static double sqr(double v) {
+		return v * v;
+	}
+
+	private static int ring(long cell, int cx, int cy) {
+		int i = (int) (cell >> 32);
+		int j = (int) cell;
+		return Math.max(Math.abs(i - cx), Math.abs(j - cy));
+	}
+
+	// entries of all cells in the given (inclusive) range of cell indices. If the
+	// range covers more cells than are occupied, the occupied cells are scanned
+	// instead.
+	private List<Entry> candidates(int x0, int y0, int x1, int y1) {
+		List<Entry> result = new ArrayList<>();
+		long span = ((long) x1 - x0 + 1) * ((long) y1 - y0 + 1);
+		if (span > cells.size()) {
+			for (List<Entry> list : cells.values())
+				for (Entry e : list) {
+					int i = (int) (e.cell >> 32);
+					int j = (int) e.cell;
+					if (i >= x0 && i <= x1 && j >= y0 && j <= y1)
+						result.add(e);
+				}
+		} else
+			for (int i = x0; i <= x1; i++)
+				for (int j = y0; j <= y1; j++) {
+					List<Entry> list = cells.get(key(i, j));
+					if (list != null)
+						result.addAll(list);
+				}
+		return result;
+	}
+
+	private void flush() {
+		if (pending.isEmpty())
+			return;
+		for (LayoutNode node : new ArrayList<>(pending))
+			if (node.hasPosition())
+				update(node);
+	}
+
+	private void removeFromCell(Entry e) {
+		List<Entry> list = cells.get(e.cell);
+		list.remove(e);
+		if (list.isEmpty())
+			cells.remove(e.cell);
+	}
+
+	private int index(double v) {
+		// saturating cast keeps extreme coordinates in the outermost cells
+		return (int) Math.floor(v / cellSize);
+	}
+
+	private long cellOf(double x, double y) {
+		return key(index(x), index(y));
+	}
+
+	private static long key(int i, int j) {
+		return ((long) i << 32) | (j & 0xffffffffL);
+	}
+
+}
@@ -0,0 +1,113 @@
+/**************************************************************************
+ *  TW-APPS - Applications used by 3Worlds                                *
+ *                                                                        *
+ *  Copyright 2018: Jacques Gignoux & Ian D. Davies                       *
+ *       jacques.gignoux@upmc.fr                                          *
+ *       ian.davies@anu.edu.au                                            * 
+ *                                                                        *
+ *  TW-APPS contains ModelMaker and ModelRunner, programs used to         *
+ *  construct and run 3Worlds configuration graphs. All code herein is    *
+ *  independent of UI implementation.                                     *
+ *                                                                        *
+ **************************************************************************                                       
+ *  This file is part of TW-APPS (3Worlds applications).                  *
+ *                                                                        *
+ *  TW-APPS is free software: you can redistribute it and/or modify       *
+ *  it under the terms of the GNU General Public License as published by  *
+ *  the Free Software Foundation, either version 3 of the License, or     *
+ *  (at your option) any later version.                                   *
+ *                                                                        *
+ *  TW-APPS is distributed in the hope that it will be useful,            *
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *  GNU General Public License for more details.                          *                         
+ *                                                                        *
+ *  You should have received a copy of the GNU General Public License     *
+ *  along with TW-APPS.                                                   *
+ *  If not, see <https://www.gnu.org/licenses/gpl.html>                   *
+  **************************************************************************/
+package au.edu.anu.twapps.mm.layoutGraph;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * What a view must draw for a viewport at a given resolution: the individual
+ * nodes that need their own symbols and the {@link LayoutCluster}s that stand
+ * in for everything else. Only nodes within the viewport are considered (found
+ * through the {@link LayoutNodeIndex}) so the cost scales with what is on
+ * screen rather than with the size of the graph.
+ */
+public class LevelOfDetail {
+	private final List<LayoutNode> nodes;
+	private final List<LayoutCluster> clusters;
+
+	private LevelOfDetail(List<LayoutNode> nodes, List<LayoutCluster> clusters) {
+		this.nodes = Collections.unmodifiableList(nodes);
+		this.clusters = Collections.unmodifiableList(clusters);
+	}
+
+	/**
+	 * Compute the level of detail for a viewport.
+	 * 
+	 * @param index      The spatial index of the layout graph.
+	 * @param minX       Left edge of the viewport.
+	 * @param minY       Top edge of the viewport.
+	 * @param maxX       Right edge of the viewport.
+	 * @param maxY       Bottom edge of the viewport.
+	 * @param resolution Size (in layout coordinates) below which shown nodes of
+	 *                   the same category are merged into one cluster. Zero
+	 *                   keeps every shown node individual; collapsed sub-trees
+	 *                   are always clustered.
+	 * @return The nodes to materialise and the clusters to draw.
+	 * @throws IllegalArgumentException if resolution &lt; 0.
+	 */
+	public static LevelOfDetail of(LayoutNodeIndex index, double minX, double minY, double maxX, double maxY,
+			double resolution) {
+		if (resolution < 0)
+			throw new IllegalArgumentException("resolution must be >= 0 [" + resolution + "]");
+		List<LayoutNode> nodes = new ArrayList<>();
+		List<LayoutCluster> clusters = new ArrayList<>();
+		Map<List<Object>, List<LayoutNode>> groups = new LinkedHashMap<>();
+		for (LayoutNode node : index.query(minX, minY, maxX, maxY)) {
+			// hidden nodes are represented by the cluster on their anchor
+			if (!node.isShown())
+				continue;
+			for (LayoutNode child : node.getChildren())
+				if (child.isCollapsed())
+					clusters.add(new LayoutCluster(child, node));
+			if (resolution > 0) {
+				List<Object> key = List.of((long) Math.floor(node.getX() / resolution),
+						(long) Math.floor(node.getY() / resolution), Objects.toString(node.getCategory()));
+				groups.computeIfAbsent(key, k -> new ArrayList<>()).add(node);
+			} else
+				nodes.add(node);
+		}
+		for (Map.Entry<List<Object>, List<LayoutNode>> group : groups.entrySet())
+			if (group.getValue().size() == 1)
+				nodes.add(group.getValue().get(0));
+			else
+				clusters.add(new LayoutCluster(group.getValue().get(0).getCategory(), group.getValue()));
+		return new LevelOfDetail(nodes, clusters);
+	}
+
+	/**
+	 * @return Shown nodes in the viewport that should be drawn individually.
+	 */
+	public List<LayoutNode> getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * @return Clusters to draw in place of collapsed sub-trees and of groups of
+	 *         nodes that cannot be distinguished at this resolution.
+	 */
+	public List<LayoutCluster> getClusters() {
+		return clusters;
+	}
+
+}
@@ -0,0 +1,73 @@
+/**************************************************************************
+ *  TW-APPS - Applications used by 3Worlds                                *
+ *                                                                        *
+ *  Copyright 2018: Jacques Gignoux & Ian D. Davies                       *
+ *       jacques.gignoux@upmc.fr                                          *
+ *       ian.davies@anu.edu.au                                            * 
+ *                                                                        *
+ *  TW-APPS contains ModelMaker and ModelRunner, programs used to         *
+ *  construct and run 3Worlds configuration graphs. All code herein is    *
+ *  independent of UI implementation.                                     *
+ *                                                                        *
+ **************************************************************************                                       
+ *  This file is part of TW-APPS (3Worlds applications).                  *
+ *                                                                        *
+ *  TW-APPS is free software: you can redistribute it and/or modify       *
+ *  it under the terms of the GNU General Public License as published by  *
+ *  the Free Software Foundation, either version 3 of the License, or     *
+ *  (at your option) any later version.                                   *
+ *                                                                        *
+ *  TW-APPS is distributed in the hope that it will be useful,            *
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *  GNU General Public License for more details.                          *                         
+ *                                                                        *
+ *  You should have received a copy of the GNU General Public License     *
+ *  along with TW-APPS.                                                   *
+ *  If not, see <https://www.gnu.org/licenses/gpl.html>                   *
+  **************************************************************************/
+package au.edu.anu.twapps.mm.layoutGraph;
+
+/**
+ * Creates and releases the implementation-specific drawing objects of
+ * {@link LayoutNode}s and {@link LayoutEdge}s. When one is set on the
+ * {@link LayoutGraphFactory} the layout graph is in lazy mode: drawing objects
+ * are made the first time they are asked for and released again when their
+ * sub-tree is collapsed, so memory scales with what is on screen rather than
+ * with the size of the model. Without one, the view must set all drawing
+ * objects itself as before.
+ */
+public interface VisualElementFactory {
+	/**
+	 * Make the symbol and text of a node. Implementations must call
+	 * {@link LayoutNode#setVisualElements(Object, Object)}.
+	 * 
+	 * @param node The node to materialise.
+	 */
+	public void materialise(LayoutNode node);
+
+	/**
+	 * Make the line and arrowhead joining a child to its parent. Implementations
+	 * must call {@link LayoutNode#setParentLine(Object, Object)}.
+	 * 
+	 * @param child The child node of the relationship.
+	 */
+	public void materialiseParentLine(LayoutNode child);
+
+	/**
+	 * Make the line, arrowhead and text of an edge. Implementations must call
+	 * {@link LayoutEdge#setVisualElements(Object, Object, Object)}.
+	 * 
+	 * @param edge The edge to materialise.
+	 */
+	public void materialise(LayoutEdge edge);
+
+	/**
+	 * Remove a drawing object from the view. Implementations may defer removal
+	 * (e.g. until a collapse animation has finished).
+	 * 
+	 * @param element The drawing object no longer referenced by the layout graph.
+	 */
+	public void release(Object element);
+
+}
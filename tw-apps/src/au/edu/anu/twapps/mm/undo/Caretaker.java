@@ -29,19 +29,44 @@
 
 package au.edu.anu.twapps.mm.undo;
 
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.LinkedList;
 import java.util.List;
 
 /**
  * A static class to manage the list of {@link Memento} and the index of the
  * current state.
+ * <p>
+ * The most recently added states are held in memory in a ring buffer bounded
+ * by a byte budget ({@link #setByteBudget(long)}). When the budget is exceeded
+ * the oldest states leave the buffer and are spilled ({@link Memento#spill()})
+ * to the {@link UndoJournal} on the {@link UndoWriter} thread, so long
+ * sessions do not grow without bound. Restoring a recent state does not read
+ * the journal or replay deltas from disk, but it is still not free of file
+ * I/O: the state is written to scratch files that ModelMaker then imports.
+ * <p>
+ * States may still be being recorded by the {@link UndoWriter} when they are
+ * added. {@link #prev()} and {@link #succ()} return at once; it is up to the
+ * state to wait until it is complete when it is restored. Such states count
+ * towards the budget only once recorded, so a burst of edits on a large model
+ * does not push the recent states out. The full text kept by the current state
+ * does count.
  * 
  * @author Ian Davies - 1 Jun 2020
  */
 
 public class Caretaker {
+	/**
+	 * Default memory budget for states held in memory (64 MB).
+	 */
+	public static final long DEFAULT_BYTE_BUDGET = 64L * 1024 * 1024;
+
 	private static List<Memento> mementos;
 	private static int index;
+	// states held in memory, oldest first
+	private static final Deque<Memento> resident = new ArrayDeque<>();
+	private static long byteBudget = DEFAULT_BYTE_BUDGET;
 
 	private Caretaker() {
 
@@ -70,6 +95,47 @@ public class Caretaker {
 	public static void addState(Memento m) {
 		index++;
 		mementos.add(index, m);
+		resident.addLast(m);
+		trim();
+	}
+
+	/**
+	 * Set the memory budget for states held in memory. The newest state is always
+	 * kept in memory whatever its size.
+	 * 
+	 * @param bytes The budget in bytes.
+	 * @throws IllegalArgumentException if bytes &lt; 0.
+	 */
+	public static void setByteBudget(long bytes) {
+		if (bytes < 0)
+			throw new IllegalArgumentException("bytes must be >= 0 [" + bytes + "]");
+		byteBudget = bytes;
+		trim();
+	}
+
+	/**
+	 * @return The memory budget for states held in memory.
+	 */
+	public static long getByteBudget() {
+		return byteBudget;
+	}
+
+	// spill the oldest states until the resident ones fit the budget. Sizes are
+	// read once per trim: they change when the writer records a state.
+	private static void trim() {
+		long[] sizes = new long[resident.size()];
+		long bytes = 0;
+		int i = 0;
+		for (Memento m : resident) {
+			sizes[i] = m.byteSize();
+			bytes += sizes[i++];
+		}
+		i = 0;
+		while (bytes > byteBudget && resident.size() > 1) {
+			Memento m = resident.pollFirst();
+			bytes -= sizes[i++];
+			UndoWriter.execute(m::spill);
+		}
 	}
 
 	/**
@@ -134,6 +200,8 @@ public class Caretaker {
 				m.finalise();
 		mementos = new LinkedList<>();
 		index = -1;
+		resident.clear();
+		UndoJournal.truncate();
 	}
 
 }
@@ -29,21 +29,25 @@
 
 package au.edu.anu.twapps.mm.undo;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import au.edu.anu.twcore.project.Project;
 import fr.cnrs.iees.omugi.graph.impl.ALEdge;
 import fr.cnrs.iees.omugi.graph.impl.TreeGraph;
 import fr.cnrs.iees.omugi.graph.impl.TreeGraphDataNode;
 import fr.cnrs.iees.omugi.graph.io.impl.OmugiGraphExporter;
-import fr.cnrs.iees.omugi.identity.IdentityScope;
-import fr.cnrs.iees.omugi.identity.impl.LocalScope;
 import fr.cnrs.iees.omugi.io.GraphFileFormats;
 import fr.cnrs.iees.omhtk.utils.*;
 import au.edu.anu.twapps.mm.MMModelImpl;
@@ -60,11 +64,37 @@ public class MMMemento implements Memento {
 	private final static String layoutName = "__stateB";
 	private final static String prefName = "__stateC";
 
-	private Tuple<File, File, File> state;
+	// The most recently captured or restored state. New states are recorded as
+	// deltas against it.
+	private static volatile MMMemento current;
+	// captured states waiting for the writer, oldest first
+	private static final Deque<MMMemento> pending = new ArrayDeque<>();
+	private static boolean draining;
+
+	private final MMMemento base;
+	private final CompletableFuture<Void> ready = new CompletableFuture<>();
+	// files exported on the edit thread, read and deleted by the writer
+	private final File rawConfig;
+	private final File rawLayout;
+	private final File rawPrefs;
+	// built by the writer
+	private TextSnapshot config;
+	private TextSnapshot layout;
+	private TextSnapshot prefs;
 	private String desc;
+	// payloads moved to the journal
+	private boolean spilled;
+	private volatile boolean finalised;
 
 	/**
-	 * Construct a ModelMaker memento.
+	 * Construct a ModelMaker memento. The graphs are exported, and the controls
+	 * file copied, on the calling thread, each to a file of its own. This file
+	 * I/O remains part of every edit: the graph library only exports to files
+	 * and offers no cheaper way to take a copy of a graph that the editor then
+	 * goes on to change. A background writer then reads and deletes these files
+	 * and records them as deltas against the current state (see
+	 * {@link TextSnapshot}), so the diffing is off the calling thread and the
+	 * memory held by a state scales with the size of the edit.
 	 * 
 	 * @param desc Descrption of the state to appear in application controls.
 	 * @param a    The configuration graph.
@@ -72,58 +102,185 @@ public class MMMemento implements Memento {
 	 * @param c    The state of ModelMaker controls.
 	 */
 	public MMMemento(String desc, TreeGraph<TreeGraphDataNode, ALEdge> a, TreeGraph<LayoutNode, LayoutEdge> b, File c) {
-		this.state = nextState();
 		this.desc = desc;
-		new OmugiGraphExporter(state.getFirst()).exportGraph(a);
-		new OmugiGraphExporter(state.getSecond()).exportGraph(b);
+		String ext = GraphFileFormats.TGOMUGI.extension().split(" ")[0];
+		rawConfig = UndoFiles.newFile(configName, ext);
+		rawLayout = UndoFiles.newFile(layoutName, ext);
+		rawPrefs = UndoFiles.newFile(prefName, ".xml");
+		new OmugiGraphExporter(rawConfig).exportGraph(a);
+		LayoutNode.storePositions(b.nodes());
+		new OmugiGraphExporter(rawLayout).exportGraph(b);
 		try {
-			Files.copy(c.toPath(), state.getThird().toPath(), StandardCopyOption.REPLACE_EXISTING);
+			Files.copy(c.toPath(), rawPrefs.toPath(), StandardCopyOption.REPLACE_EXISTING);
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
+		base = current;
+		current = this;
+		synchronized (MMMemento.class) {
+			pending.addLast(this);
+			if (!draining) {
+				draining = true;
+				UndoWriter.execute(MMMemento::drain);
+			}
+		}
+	}
+
+	// Writer task: builds all states captured so far in one pass, so a burst of
+	// edits costs one hand-over rather than one per state.
+	private static void drain() {
+		for (;;) {
+			List<MMMemento> batch;
+			synchronized (MMMemento.class) {
+				if (pending.isEmpty()) {
+					draining = false;
+					return;
+				}
+				batch = new ArrayList<>(pending);
+				pending.clear();
+			}
+			for (MMMemento m : batch)
+				m.build();
+		}
+	}
+
+	private void build() {
+		try {
+			if (!finalised) {
+				config = TextSnapshot.capture(base == null ? null : base.config, toLines(readBytes(rawConfig)));
+				layout = TextSnapshot.capture(base == null ? null : base.layout, toLines(readBytes(rawLayout)));
+				prefs = TextSnapshot.capture(base == null ? null : base.prefs, toLines(readBytes(rawPrefs)));
+				// only the current state keeps its full text
+				if (base != null && base != current)
+					base.release();
+				// restored away from before it was built
+				if (this != current)
+					release();
+			}
+			deleteRawFiles();
+			ready.complete(null);
+		} catch (RuntimeException e) {
+			ready.completeExceptionally(e);
+		}
+	}
+
+	private void deleteRawFiles() {
+		deleteFile(rawConfig);
+		deleteFile(rawLayout);
+		deleteFile(rawPrefs);
 	}
 
 	/**
+	 * Rebuild the files of this state for restoring, waiting if the writer has
+	 * not yet recorded it. This state becomes the base of the next state to be
+	 * recorded.
+	 * 
 	 * @return a tuple of artifacts for this state (configuration, layout,
 	 *         application controls).
 	 */
 	public final Tuple<File, File, File> getState() {
-		return state;
+		ready.join();
+		// the texts are rebuilt once, by retain(); lines() then returns them as is
+		Tuple<File, File, File> scratch = scratchFiles();
+		writeLines(scratch.getFirst(), config.retain().lines());
+		writeLines(scratch.getSecond(), layout.retain().lines());
+		writeLines(scratch.getThird(), prefs.retain().lines());
+		MMMemento previous = current;
+		current = this;
+		if (previous != null && previous != this && previous.ready.isDone())
+			previous.release();
+		return scratch;
+	}
+
+	/**
+	 * Wait until the writer has recorded this state.
+	 */
+	public void await() {
+		ready.join();
+	}
+
+	/**
+	 * {@inheritDoc} A state the writer has not yet recorded counts as nothing: its
+	 * capture is in files, and its size is only known once it is recorded.
+	 */
+	@Override
+	public long byteSize() {
+		if (!ready.isDone())
+			return 0;
+		if (config == null)
+			return 0;
+		return config.byteSize() + layout.byteSize() + prefs.byteSize();
 	}
 
-	private Tuple<File, File, File> nextState() {
-		List<Duple<File, File>> filePairs = getFiles();
-		IdentityScope scope = new LocalScope("UNDO");
-		for (Duple<File, File> filePair : filePairs) {
-			String filename = filePair.getFirst().getName();
-			String name = filename.substring(0, filename.indexOf("."));
-			scope.newId(true, name);
+	@Override
+	public void spill() {
+		synchronized (MMMemento.class) {
+			// never wait here: this may run on the writer itself
+			if (finalised || spilled || !ready.isDone() || config == null)
+				return;
+		}
+		try {
+			// one journal record holding the three payloads back to back
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			int[] ends = new int[3];
+			config.writePayload(out);
+			ends[0] = out.size();
+			layout.writePayload(out);
+			ends[1] = out.size();
+			prefs.writePayload(out);
+			ends[2] = out.size();
+			synchronized (MMMemento.class) {
+				// a finalised state must not write into a truncated journal
+				if (finalised)
+					return;
+				long offset = UndoJournal.append(bytes.toByteArray());
+				spilled = true;
+				config.spilled(offset, ends[0]);
+				layout.spilled(offset + ends[0], ends[1] - ends[0]);
+				prefs.spilled(offset + ends[1], ends[2] - ends[1]);
+			}
+		} catch (IOException e) {
+			// the state simply stays in memory
+			e.printStackTrace();
 		}
-		String newName1 = scope.newId(true, configName + 1).id();
-		String newName2 = newName1.replace(configName, layoutName);
-		String newName3 = newName1.replace(configName, prefName);
-		File f1 = Project.makeFile(newName1 + GraphFileFormats.TGOMUGI.extension().split(" ")[0]);
-		File f2 = Project.makeFile(newName2 + GraphFileFormats.TGOMUGI.extension().split(" ")[0]);
-		File f3 = Project.makeFile(newName3 + ".xml");
-		return new Tuple<File, File, File>(f1, f2, f3);
 	}
 
-	private static List<Duple<File, File>> getFiles() {
-		File[] files = Project.getProjectFile().listFiles(new FilenameFilter() {
+	private void release() {
+		if (config != null) {
+			config.release();
+			layout.release();
+			prefs.release();
+		}
+	}
 
-			@Override
-			public boolean accept(File dir, String name) {
+	private static Tuple<File, File, File> scratchFiles() {
+		File f1 = UndoFiles.file(configName + GraphFileFormats.TGOMUGI.extension().split(" ")[0]);
+		File f2 = UndoFiles.file(layoutName + GraphFileFormats.TGOMUGI.extension().split(" ")[0]);
+		File f3 = UndoFiles.file(prefName + ".xml");
+		return new Tuple<File, File, File>(f1, f2, f3);
+	}
 
-				return name.startsWith(configName);
-			}
+	private static byte[] readBytes(File f) {
+		try {
+			return Files.readAllBytes(f.toPath());
+		} catch (IOException e) {
+			e.printStackTrace();
+			return new byte[0];
+		}
+	}
 
-		});
-		List<Duple<File, File>> result = new ArrayList<>();
-		for (File f : files) {
-			String b = f.getAbsolutePath().replace(configName, layoutName);
-			result.add(new Duple<File, File>(f, new File(b)));
+	// Latin-1 maps every byte to one char so files are reproduced exactly.
+	private static String[] toLines(byte[] bytes) {
+		return new String(bytes, StandardCharsets.ISO_8859_1).split("\n", -1);
+	}
+
+	private static void writeLines(File f, String[] lines) {
+		try {
+			Files.write(f.toPath(), String.join("\n", lines).getBytes(StandardCharsets.ISO_8859_1));
+		} catch (IOException e) {
+			e.printStackTrace();
 		}
-		return result;
 	}
 
 	private static void deleteFile(File f) {
@@ -133,9 +290,21 @@ public class MMMemento implements Memento {
 
 	@Override
 	public void finalise() {
-		deleteFile(state.getFirst());
-		deleteFile(state.getSecond());
-		deleteFile(state.getThird());
+		synchronized (MMMemento.class) {
+			finalised = true;
+			// never to be built: release anyone waiting
+			if (pending.remove(this)) {
+				deleteRawFiles();
+				ready.complete(null);
+			}
+		}
+		if (current == this) {
+			current = null;
+			Tuple<File, File, File> scratch = scratchFiles();
+			deleteFile(scratch.getFirst());
+			deleteFile(scratch.getSecond());
+			deleteFile(scratch.getThird());
+		}
 	}
 
 	@Override
@@ -144,10 +313,12 @@ public class MMMemento implements Memento {
 	}
 
 	/**
-	 * Delete all state files in the current {@link Project} directory.
+	 * Delete all state files of the current {@link Project}: the undo directory
+	 * and any state files left in the project directory by earlier versions.
 	 */
 	public static void deleteStrandedFiles() {
-
+		UndoJournal.close();
+		UndoFiles.clear();
 		File[] files = Project.getProjectFile().listFiles(new FilenameFilter() {
 
 			@Override
@@ -156,8 +327,9 @@ public class MMMemento implements Memento {
 			}
 
 		});
-		for (File f : files)
-			f.delete();
+		if (files != null)
+			for (File f : files)
+				f.delete();
 
 	}
 
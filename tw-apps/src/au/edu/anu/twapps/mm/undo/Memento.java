@@ -47,4 +47,19 @@ public interface Memento {
 	 */
 	public String getDescription();
 
+	/**
+	 * @return Approximate number of bytes this state holds in memory.
+	 */
+	public default long byteSize() {
+		return 0;
+	}
+
+	/**
+	 * Move this state out of memory (e.g. to disk). Called from a background
+	 * thread by the {@link Caretaker} when its memory budget is exceeded. The
+	 * state must remain usable afterwards.
+	 */
+	public default void spill() {
+	}
+
 }
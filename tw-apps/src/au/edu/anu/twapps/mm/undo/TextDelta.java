@@ -0,0 +1,239 @@
+/**************************************************************************
+ *  TW-APPS - Applications used by 3Worlds                                *
+ *                                                                        *
+ *  Copyright 2018: Jacques Gignoux & Ian D. Davies                       *
+ *       jacques.gignoux@upmc.fr                                          *
+ *       ian.davies@anu.edu.au                                            * 
+ *                                                                        *
+ *  TW-APPS contains ModelMaker and ModelRunner, programs used to         *
+ *  construct and run 3Worlds configuration graphs. All code herein is    *
+ *  independent of UI implementation.                                     *
+ *                                                                        *
+ **************************************************************************                                       
+ *  This file is part of TW-APPS (3Worlds applications).                  *
+ *                                                                        *
+ *  TW-APPS is free software: you can redistribute it and/or modify       *
+ *  it under the terms of the GNU General Public License as published by  *
+ *  the Free Software Foundation, either version 3 of the License, or     *
+ *  (at your option) any later version.                                   *
+ *                                                                        *
+ *  TW-APPS is distributed in the hope that it will be useful,            *
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *  GNU General Public License for more details.                          *                         
+ *                                                                        *
+ *  You should have received a copy of the GNU General Public License     *
+ *  along with TW-APPS.                                                   *
+ *  If not, see <https://www.gnu.org/licenses/gpl.html>                   *
+  **************************************************************************/
+package au.edu.anu.twapps.mm.undo;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The line differences between two versions of a text (an exported graph or
+ * preferences file). A delta is a list of hunks, each replacing a run of lines
+ * of the old text with a run of new lines. Only the new lines are held so the
+ * size of a delta scales with the size of the edit rather than the size of the
+ * text.
+ * <p>
+ * Differences are found with Myers' O(ND) algorithm after removing the common
+ * head and tail. If the texts differ by more than {@link #MAX_EDITS} lines, the
+ * whole middle section is replaced instead.
+ */
+public class TextDelta {
+	/**
+	 * Maximum number of line insertions plus deletions searched for.
+	 */
+	public static final int MAX_EDITS = 512;
+
+	private final int[] starts;
+	private final int[] deletes;
+	private final String[][] inserts;
+	private final int newLength;
+
+	private TextDelta(int[] starts, int[] deletes, String[][] inserts, int newLength) {
+		this.starts = starts;
+		this.deletes = deletes;
+		this.inserts = inserts;
+		this.newLength = newLength;
+	}
+
+	/**
+	 * Compute the delta that transforms one text into another.
+	 * 
+	 * @param from Lines of the old text.
+	 * @param to   Lines of the new text.
+	 * @return The delta from old to new.
+	 */
+	public static TextDelta diff(String[] from, String[] to) {
+		int head = 0;
+		int max = Math.min(from.length, to.length);
+		while (head < max && from[head].equals(to[head]))
+			head++;
+		int tail = 0;
+		while (tail < max - head && from[from.length - 1 - tail].equals(to[to.length - 1 - tail]))
+			tail++;
+		int n = from.length - head - tail;
+		int m = to.length - head - tail;
+		boolean[] deleted = new boolean[n];
+		boolean[] inserted = new boolean[m];
+		if (!myers(from, head, n, to, head, m, deleted, inserted)) {
+			Arrays.fill(deleted, true);
+			Arrays.fill(inserted, true);
+		}
+		// gather runs of marked lines into hunks
+		List<int[]> runs = new ArrayList<>();
+		List<String[]> lines = new ArrayList<>();
+		int i = 0;
+		int j = 0;
+		while (i < n || j < m) {
+			if (i < n && j < m && !deleted[i] && !inserted[j]) {
+				i++;
+				j++;
+				continue;
+			}
+			int start = i;
+			int j0 = j;
+			while ((i < n && deleted[i]) || (j < m && inserted[j])) {
+				while (i < n && deleted[i])
+					i++;
+				while (j < m && inserted[j])
+					j++;
+			}
+			runs.add(new int[] { head + start, i - start });
+			lines.add(Arrays.copyOfRange(to, head + j0, head + j));
+		}
+		int[] starts = new int[runs.size()];
+		int[] deletes = new int[runs.size()];
+		for (int h = 0; h < starts.length; h++) {
+			starts[h] = runs.get(h)[0];
+			deletes[h] = runs.get(h)[1];
+		}
+		return new TextDelta(starts, deletes, lines.toArray(new String[lines.size()][]), to.length);
+	}
+
+	// Marks the lines deleted from a and inserted from b on a shortest edit path.
+	// Returns false if the path is longer than MAX_EDITS.
+	private static boolean myers(String[] a, int a0, int n, String[] b, int b0, int m, boolean[] deleted,
+			boolean[] inserted) {
+		int max = Math.min(n + m, MAX_EDITS);
+		int offset = max + 1;
+		int[] v = new int[2 * max + 3];
+		List<int[]> trace = new ArrayList<>();
+		for (int d = 0; d <= max; d++) {
+			trace.add(v.clone());
+			for (int k = -d; k <= d; k += 2) {
+				int x;
+				if (k == -d || (k != d && v[offset + k - 1] < v[offset + k + 1]))
+					x = v[offset + k + 1];
+				else
+					x = v[offset + k - 1] + 1;
+				int y = x - k;
+				while (x < n && y < m && a[a0 + x].equals(b[b0 + y])) {
+					x++;
+					y++;
+				}
+				v[offset + k] = x;
+				if (x >= n && y >= m) {
+					backtrack(trace, offset, d, n, m, deleted, inserted);
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private static void backtrack(List<int[]> trace, int offset, int dEnd, int n, int m, boolean[] deleted,
+			boolean[] inserted) {
+		int x = n;
+		int y = m;
+		for (int d = dEnd; d > 0; d--) {
+			int[] v = trace.get(d);
+			int k = x - y;
+			int prevK;
+			if (k == -d || (k != d && v[offset + k - 1] < v[offset + k + 1]))
+				prevK = k + 1;
+			else
+				prevK = k - 1;
+			int prevX = v[offset + prevK];
+			int prevY = prevX - prevK;
+			// a move down the edit graph inserts, a move right deletes
+			if (prevK == k + 1)
+				inserted[prevY] = true;
+			else
+				deleted[prevX] = true;
+			x = prevX;
+			y = prevY;
+		}
+	}
+
+	/**
+	 * Apply this delta to the text it was computed from.
+	 * 
+	 * @param from Lines of the old text.
+	 * @return Lines of the new text.
+	 */
+	public String[] apply(String[] from) {
+		String[] result = new String[newLength];
+		int src = 0;
+		int dst = 0;
+		for (int h = 0; h < starts.length; h++) {
+			int common = starts[h] - src;
+			System.arraycopy(from, src, result, dst, common);
+			dst += common;
+			System.arraycopy(inserts[h], 0, result, dst, inserts[h].length);
+			dst += inserts[h].length;
+			src = starts[h] + deletes[h];
+		}
+		System.arraycopy(from, src, result, dst, from.length - src);
+		return result;
+	}
+
+	void writeTo(DataOutputStream out) throws IOException {
+		out.writeInt(newLength);
+		out.writeInt(starts.length);
+		for (int h = 0; h < starts.length; h++) {
+			out.writeInt(starts[h]);
+			out.writeInt(deletes[h]);
+			TextSnapshot.writeLines(out, inserts[h]);
+		}
+	}
+
+	static TextDelta readFrom(ByteBuffer in) {
+		int newLength = in.getInt();
+		int n = in.getInt();
+		int[] starts = new int[n];
+		int[] deletes = new int[n];
+		String[][] inserts = new String[n][];
+		for (int h = 0; h < n; h++) {
+			starts[h] = in.getInt();
+			deletes[h] = in.getInt();
+			inserts[h] = TextSnapshot.readLines(in);
+		}
+		return new TextDelta(starts, deletes, inserts, newLength);
+	}
+
+	/**
+	 * @return true if the two texts were identical.
+	 */
+	public boolean isEmpty() {
+		return starts.length == 0;
+	}
+
+	/**
+	 * @return Approximate number of bytes held by this delta.
+	 */
+	public long byteSize() {
+		long result = 12L * starts.length;
+		for (String[] lines : inserts)
+			result += TextSnapshot.byteSize(lines);
+		return result;
+	}
+
+}
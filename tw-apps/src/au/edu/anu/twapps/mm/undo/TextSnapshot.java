@@ -0,0 +1,241 @@
+/**************************************************************************
+ *  TW-APPS - Applications used by 3Worlds                                *
+ *                                                                        *
+ *  Copyright 2018: Jacques Gignoux & Ian D. Davies                       *
+ *       jacques.gignoux@upmc.fr                                          *
+ *       ian.davies@anu.edu.au                                            * 
+ *                                                                        *
+ *  TW-APPS contains ModelMaker and ModelRunner, programs used to         *
+ *  construct and run 3Worlds configuration graphs. All code herein is    *
+ *  independent of UI implementation.                                     *
+ *                                                                        *
+ **************************************************************************                                       
+ *  This file is part of TW-APPS (3Worlds applications).                  *
+ *                                                                        *
+ *  TW-APPS is free software: you can redistribute it and/or modify       *
+ *  it under the terms of the GNU General Public License as published by  *
+ *  the Free Software Foundation, either version 3 of the License, or     *
+ *  (at your option) any later version.                                   *
+ *                                                                        *
+ *  TW-APPS is distributed in the hope that it will be useful,            *
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *  GNU General Public License for more details.                          *                         
+ *                                                                        *
+ *  You should have received a copy of the GNU General Public License     *
+ *  along with TW-APPS.                                                   *
+ *  If not, see <https://www.gnu.org/licenses/gpl.html>                   *
+  **************************************************************************/
+package au.edu.anu.twapps.mm.undo;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * One version of a text (an exported graph or preferences file) in the undo
+ * history. A snapshot is either a full checkpoint or a {@link TextDelta}
+ * against the snapshot it was captured after (its base). Deltas are only kept
+ * while they are small: every {@link #CHECKPOINT_INTERVAL} steps, or when a
+ * delta grows beyond half the size of the text, a full checkpoint is stored
+ * instead so that rebuilding a text never replays a long chain.
+ * <p>
+ * The most recently captured or restored snapshot also keeps its full text so
+ * that the next capture can be diffed against it without rebuilding. The
+ * payload (checkpoint text or delta) of an older snapshot may be spilled to
+ * the {@link UndoJournal}, after which it is read back whenever it is needed.
+ */
+public class TextSnapshot {
+	/**
+	 * Maximum number of deltas between full checkpoints.
+	 */
+	public static final int CHECKPOINT_INTERVAL = 20;
+
+	private final TextSnapshot base;
+	private final int depth;
+	private final long bytes;
+	// payload while in memory: the text of a checkpoint or the delta of others.
+	private String[] text;
+	private TextDelta delta;
+	// location of the payload in the journal once spilled (offset -1 until then)
+	private long spillOffset = -1;
+	private int spillLength;
+	// full text kept while this version is current, and its size if it is not
+	// the payload itself
+	private String[] cache;
+	private long cacheBytes;
+
+	private TextSnapshot(TextSnapshot base, TextDelta delta, int depth, String[] lines, long textBytes) {
+		this.base = base;
+		this.delta = delta;
+		this.depth = depth;
+		if (delta == null) {
+			this.text = lines;
+			this.bytes = textBytes;
+		} else {
+			this.bytes = delta.byteSize();
+			this.cacheBytes = textBytes;
+		}
+		this.cache = lines;
+	}
+
+	/**
+	 * Record a new version of a text.
+	 * 
+	 * @param base  The snapshot of the previous (current) version or null if there
+	 *              is none.
+	 * @param lines Lines of the new version.
+	 * @return Snapshot holding either a delta against base or a full checkpoint.
+	 */
+	public static TextSnapshot capture(TextSnapshot base, String[] lines) {
+		long textBytes = byteSize(lines);
+		if (base != null && base.depth + 1 < CHECKPOINT_INTERVAL) {
+			TextDelta delta = TextDelta.diff(base.lines(), lines);
+			if (delta.byteSize() * 2 < textBytes)
+				return new TextSnapshot(base, delta, base.depth + 1, lines, textBytes);
+		}
+		return new TextSnapshot(null, null, 0, lines, textBytes);
+	}
+
+	/**
+	 * Rebuild the full text of this version. The result must not be modified.
+	 * 
+	 * @return Lines of the text.
+	 */
+	public String[] lines() {
+		// replay deltas forward from the nearest snapshot that has its text
+		Deque<TextDelta> deltas = new ArrayDeque<>(depth);
+		TextSnapshot s = this;
+		String[] result;
+		while ((result = s.knownText()) == null) {
+			deltas.push(s.delta());
+			s = s.base;
+		}
+		while (!deltas.isEmpty())
+			result = deltas.pop().apply(result);
+		return result;
+	}
+
+	/**
+	 * Keep the full text of this version in memory (while it is current).
+	 * 
+	 * @return this snapshot.
+	 */
+	public TextSnapshot retain() {
+		String[] lines = lines();
+		synchronized (this) {
+			cache = lines;
+			cacheBytes = lines == text ? 0 : byteSize(lines);
+		}
+		return this;
+	}
+
+	/**
+	 * Drop the full text kept by {@link #retain()}.
+	 */
+	public synchronized void release() {
+		cache = null;
+		cacheBytes = 0;
+	}
+
+	/**
+	 * @return true if this snapshot stores the full text.
+	 */
+	public boolean isCheckpoint() {
+		return depth == 0;
+	}
+
+	/**
+	 * @return Approximate number of bytes this snapshot holds in memory: its
+	 *         payload until spilled plus any full text retained while it is
+	 *         current.
+	 */
+	public synchronized long byteSize() {
+		return (spillOffset < 0 ? bytes : 0) + cacheBytes;
+	}
+
+	/**
+	 * Serialise the payload of this snapshot. The payload stays in memory until
+	 * {@link #spilled(long, int)} is called once it is in the journal.
+	 * 
+	 * @param out Stream of the journal record.
+	 * @throws IOException if the payload cannot be written.
+	 */
+	synchronized void writePayload(DataOutputStream out) throws IOException {
+		if (depth == 0)
+			writeLines(out, text);
+		else
+			delta.writeTo(out);
+	}
+
+	/**
+	 * Drop the payload from memory now that it is in the journal.
+	 * 
+	 * @param offset Offset of the payload in the journal.
+	 * @param length Length of the payload.
+	 */
+	synchronized void spilled(long offset, int length) {
+		spillOffset = offset;
+		spillLength = length;
+		// a retained checkpoint text stays in memory as the cache
+		if (cache != null && cache == text)
+			cacheBytes = bytes;
+		text = null;
+		delta = null;
+	}
+
+	private synchronized String[] knownText() {
+		if (cache != null)
+			return cache;
+		if (depth > 0)
+			return null;
+		if (text != null)
+			return text;
+		return readLines(payload());
+	}
+
+	private synchronized TextDelta delta() {
+		if (delta != null)
+			return delta;
+		return TextDelta.readFrom(payload());
+	}
+
+	private ByteBuffer payload() {
+		try {
+			return UndoJournal.read(spillOffset, spillLength);
+		} catch (IOException e) {
+			throw new IllegalStateException("Undo state cannot be read [" + spillOffset + "]", e);
+		}
+	}
+
+	static void writeLines(DataOutputStream out, String[] lines) throws IOException {
+		out.writeInt(lines.length);
+		for (String line : lines) {
+			// lines are Latin-1 decoded so each char is one byte
+			byte[] b = line.getBytes(StandardCharsets.ISO_8859_1);
+			out.writeInt(b.length);
+			out.write(b);
+		}
+	}
+
+	static String[] readLines(ByteBuffer in) {
+		String[] result = new String[in.getInt()];
+		for (int i = 0; i < result.length; i++) {
+			byte[] b = new byte[in.getInt()];
+			in.get(b);
+			result[i] = new String(b, StandardCharsets.ISO_8859_1);
+		}
+		return result;
+	}
+
+	static long byteSize(String[] lines) {
+		long result = 16L + 4L * lines.length;
+		for (String line : lines)
+			result += 40 + line.length();
+		return result;
+	}
+
+}
@@ -0,0 +1,93 @@
+/**************************************************************************
+ *  TW-APPS - Applications used by 3Worlds                                *
+ *                                                                        *
+ *  Copyright 2018: Jacques Gignoux & Ian D. Davies                       *
+ *       jacques.gignoux@upmc.fr                                          *
+ *       ian.davies@anu.edu.au                                            * 
+ *                                                                        *
+ *  TW-APPS contains ModelMaker and ModelRunner, programs used to         *
+ *  construct and run 3Worlds configuration graphs. All code herein is    *
+ *  independent of UI implementation.                                     *
+ *                                                                        *
+ **************************************************************************                                       
+ *  This file is part of TW-APPS (3Worlds applications).                  *
+ *                                                                        *
+ *  TW-APPS is free software: you can redistribute it and/or modify       *
+ *  it under the terms of the GNU General Public License as published by  *
+ *  the Free Software Foundation, either version 3 of the License, or     *
+ *  (at your option) any later version.                                   *
+ *                                                                        *
+ *  TW-APPS is distributed in the hope that it will be useful,            *
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *  GNU General Public License for more details.                          *                         
+ *                                                                        *
+ *  You should have received a copy of the GNU General Public License     *
+ *  along with TW-APPS.                                                   *
+ *  If not, see <https://www.gnu.org/licenses/gpl.html>                   *
+  **************************************************************************/
+package au.edu.anu.twapps.mm.undo;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicLong;
+
+import au.edu.anu.twcore.project.Project;
+
+/**
+ * The directory of undo files for the current session. All undo files live in
+ * one subdirectory of the {@link Project} and new files are numbered from a
+ * session counter, so creating a file never depends on how many already exist.
+ */
+public class UndoFiles {
+	private final static String dirName = "__undo";
+	private static final AtomicLong counter = new AtomicLong();
+
+	private UndoFiles() {
+	}
+
+	/**
+	 * @return The undo directory of the current {@link Project} (created if
+	 *         necessary).
+	 */
+	public static File directory() {
+		File dir = Project.makeFile(dirName);
+		if (!dir.isDirectory())
+			dir.mkdirs();
+		return dir;
+	}
+
+	/**
+	 * Get a file with a fixed name in the undo directory.
+	 * 
+	 * @param name The file name.
+	 * @return The file.
+	 */
+	public static File file(String name) {
+		return new File(directory(), name);
+	}
+
+	/**
+	 * Get a new file name unique within this session.
+	 * 
+	 * @param prefix    Start of the file name.
+	 * @param extension File extension (including the dot).
+	 * @return The file (not yet created).
+	 */
+	public static File newFile(String prefix, String extension) {
+		return file(prefix + counter.incrementAndGet() + extension);
+	}
+
+	/**
+	 * Delete the undo directory and everything in it and restart numbering.
+	 */
+	public static void clear() {
+		File dir = Project.makeFile(dirName);
+		File[] files = dir.listFiles();
+		if (files != null)
+			for (File f : files)
+				f.delete();
+		dir.delete();
+		counter.set(0);
+	}
+
+}
@@ -0,0 +1,179 @@
+/**************************************************************************
+ *  TW-APPS - Applications used by 3Worlds                                *
+ *                                                                        *
+ *  Copyright 2018: Jacques Gignoux & Ian D. Davies                       *
+ *       jacques.gignoux@upmc.fr                                          *
+ *       ian.davies@anu.edu.au                                            * 
+ *                                                                        *
+ *  TW-APPS contains ModelMaker and ModelRunner, programs used to         *
+ *  construct and run 3Worlds configuration graphs. All code herein is    *
+ *  independent of UI implementation.                                     *
+ *                                                                        *
+ **************************************************************************                                       
+ *  This file is part of TW-APPS (3Worlds applications).                  *
+ *                                                                        *
+ *  TW-APPS is free software: you can redistribute it and/or modify       *
+ *  it under the terms of the GNU General Public License as published by  *
+ *  the Free Software Foundation, either version 3 of the License, or     *
+ *  (at your option) any later version.                                   *
+ *                                                                        *
+ *  TW-APPS is distributed in the hope that it will be useful,            *
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *  GNU General Public License for more details.                          *                         
+ *                                                                        *
+ *  You should have received a copy of the GNU General Public License     *
+ *  along with TW-APPS.                                                   *
+ *  If not, see <https://www.gnu.org/licenses/gpl.html>                   *
+  **************************************************************************/
+package au.edu.anu.twapps.mm.undo;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A single append-only file holding the spilled payloads of all undo states of
+ * the session. Each append returns the offset of the record, which the state
+ * keeps as its index entry; reading a record back is a slice of a
+ * memory-mapped view of the file rather than opening and parsing a file per
+ * state. Clearing the history truncates the file.
+ * <p>
+ * The file is mapped in chunks, each twice the size of the one before (up to
+ * {@link #MAX_CHUNK}). Records are written into the last chunk and never
+ * straddle two chunks, so a chunk is mapped once, when the journal first
+ * grows into it, and both appends and reads reuse the existing mappings.
+ * Unused space at the end of a chunk is left as is.
+ */
+public class UndoJournal {
+	/**
+	 * Size of the first chunk of the journal.
+	 */
+	public static final int FIRST_CHUNK = 1 << 20;
+	/**
+	 * Size beyond which chunks stop growing.
+	 */
+	public static final int MAX_CHUNK = 1 << 30;
+
+	private final static String journalName = "journal";
+	private final static String journalExtension = ".bin";
+
+	private static FileChannel channel;
+	/* mapped chunks of the file and the offset at which each starts */
+	private static List<MappedByteBuffer> chunks = new ArrayList<>();
+	private static List<Long> chunkStarts = new ArrayList<>();
+	/* end of the last record */
+	private static long end;
+
+	private UndoJournal() {
+	}
+
+	/**
+	 * Append a record to the journal.
+	 * 
+	 * @param record The bytes to append.
+	 * @return Offset of the record in the journal.
+	 * @throws IOException if the record cannot be written.
+	 */
+	public static synchronized long append(byte[] record) throws IOException {
+		if (channel == null)
+			open(UndoFiles.file(journalName + journalExtension));
+		int last = chunks.size() - 1;
+		if (last < 0 || end + record.length > chunkStarts.get(last) + chunks.get(last).capacity()) {
+			// the record does not fit: map the next chunk from the end of the journal
+			long size = last < 0 ? FIRST_CHUNK : Math.min(2L * chunks.get(last).capacity(), MAX_CHUNK);
+			chunks.add(channel.map(FileChannel.MapMode.READ_WRITE, end, Math.max(size, record.length)));
+			chunkStarts.add(end);
+			last++;
+		}
+		long offset = end;
+		ByteBuffer buffer = chunks.get(last).duplicate();
+		buffer.position((int) (offset - chunkStarts.get(last)));
+		buffer.put(record);
+		end += record.length;
+		return offset;
+	}
+
+	/**
+	 * Read a record back through the memory-mapped view of the journal.
+	 * 
+	 * @param offset Offset of the record.
+	 * @param length Length of the record.
+	 * @return A read-only buffer holding exactly the record.
+	 * @throws IOException if the record is not in the journal.
+	 */
+	public static synchronized ByteBuffer read(long offset, int length) throws IOException {
+		if (channel == null)
+			throw new IOException("Undo journal is closed");
+		if (offset < 0 || offset + length > end)
+			throw new IOException("Undo record is not in the journal [" + offset + "]");
+		// the last chunk starting at or before the record holds all of it
+		int lo = 0;
+		int hi = chunkStarts.size() - 1;
+		while (lo < hi) {
+			int mid = (lo + hi + 1) >>> 1;
+			if (chunkStarts.get(mid) <= offset)
+				lo = mid;
+			else
+				hi = mid - 1;
+		}
+		ByteBuffer result = chunks.get(lo).duplicate();
+		int position = (int) (offset - chunkStarts.get(lo));
+		result.position(position);
+		result.limit(position + length);
+		return result.slice().asReadOnlyBuffer();
+	}
+
+	/**
+	 * Discard all records. The journal file is truncated (or, if the platform
+	 * refuses to truncate a mapped file, replaced by a new one).
+	 */
+	public static synchronized void truncate() {
+		if (channel == null)
+			return;
+		unmap();
+		try {
+			channel.truncate(0);
+		} catch (IOException e) {
+			close();
+			try {
+				open(UndoFiles.newFile(journalName, journalExtension));
+			} catch (IOException e1) {
+				e1.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Close the journal (e.g. before its directory is deleted).
+	 */
+	public static synchronized void close() {
+		unmap();
+		if (channel != null)
+			try {
+				channel.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		channel = null;
+	}
+
+	/* Drop the mapped chunks; the mappings are released once collected. */
+	private static void unmap() {
+		chunks.clear();
+		chunkStarts.clear();
+		end = 0;
+	}
+
+	private static void open(File f) throws IOException {
+		channel = FileChannel.open(f.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		channel.truncate(0);
+	}
+
+}
@@ -3,11 +3,18 @@
  * Undo/Redo system for ModelMaker.
  * </p>
  * <p>
- * The state of ModelMaker is saved just before an edit in enacted. The state is
- * saved in three sequentially numbered files: the configuration graph
- * (stateA{@literal <n>}.utg), the layout graph (stateB{@literal <n>}.utg) and
- * the ModelMaker preferences (stateA{@literal <n>}.xml) to capture the current
- * state of user interface controls).
+ * The state of ModelMaker is saved just before an edit in enacted. The state
+ * comprises the configuration graph, the layout graph and the ModelMaker
+ * preferences (to capture the current state of user interface controls). Each
+ * is exported to a file on the editing thread (so each edit still pays for
+ * writing these files) and then, on the {@link UndoWriter} thread, read back
+ * and held in memory as a line delta against the previous state,
+ * with a full checkpoint at regular intervals ({@link TextSnapshot}). Restoring
+ * a state rebuilds its files (stateA.utg, stateB.utg and stateC.xml) from the
+ * nearest checkpoint. The {@link Caretaker} keeps recent states in memory up to
+ * a byte budget and spills older ones to a single append-only journal file
+ * ({@link UndoJournal}). All undo files are kept in the project's __undo
+ * directory ({@link UndoFiles}).
  * </p>
  * <p>
  * All files are deleted when a project is closed.
@@ -0,0 +1,113 @@
+/**************************************************************************
+ *  TW-APPS - Applications used by 3Worlds                                *
+ *                                                                        *
+ *  Copyright 2018: Jacques Gignoux & Ian D. Davies                       *
+ *       jacques.gignoux@upmc.fr                                          *
+ *       ian.davies@anu.edu.au                                            * 
+ *                                                                        *
+ *  TW-APPS contains ModelMaker and ModelRunner, programs used to         *
+ *  construct and run 3Worlds configuration graphs. All code herein is    *
+ *  independent of UI implementation.                                     *
+ *                                                                        *
+ **************************************************************************                                       
+ *  This file is part of TW-APPS (3Worlds applications).                  *
+ *                                                                        *
+ *  TW-APPS is free software: you can redistribute it and/or modify       *
+ *  it under the terms of the GNU General Public License as published by  *
+ *  the Free Software Foundation, either version 3 of the License, or     *
+ *  (at your option) any later version.                                   *
+ *                                                                        *
+ *  TW-APPS is distributed in the hope that it will be useful,            *
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *  GNU General Public License for more details.                          *                         
+ *                                                                        *
+ *  You should have received a copy of the GNU General Public License     *
+ *  along with TW-APPS.                                                   *
+ *  If not, see <https://www.gnu.org/licenses/gpl.html>                   *
+  **************************************************************************/
+
+package au.edu.anu.twapps.mm.layout;
+
+import static fr.cnrs.iees.twcore.constants.ConfigurationNodeLabels.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+
+import org.junit.jupiter.api.Test;
+
+import au.edu.anu.twapps.mm.layoutGraph.LayoutEdge;
+import au.edu.anu.twapps.mm.layoutGraph.LayoutGraphFactory;
+import au.edu.anu.twapps.mm.layoutGraph.LayoutNode;
+import au.edu.anu.twcore.root.TwConfigFactory;
+import fr.cnrs.iees.omugi.graph.impl.TreeGraph;
+import fr.cnrs.iees.omugi.graph.impl.TreeGraphDataNode;
+
+class ComputeAsyncTest {
+
+	/* A random tree large enough that a spring layout takes a while */
+	private static TreeGraph<LayoutNode, LayoutEdge> makeGraph(int size, long seed) {
+		TwConfigFactory cf = new TwConfigFactory();
+		LayoutGraphFactory vf = new LayoutGraphFactory();
+		TreeGraph<LayoutNode, LayoutEdge> graph = new TreeGraph<>(vf);
+		Random rnd = new Random(seed);
+		List<LayoutNode> nodes = new ArrayList<>();
+		for (int i = 0; i < size; i++) {
+			TreeGraphDataNode cNode = (TreeGraphDataNode) cf
+					.makeNode(cf.nodeClass(i == 0 ? N_ROOT.label() : N_RECORD.label()), "n" + i);
+			LayoutNode vNode = vf.makeNode(cNode.id());
+			vNode.setConfigNode(cNode);
+			if (i > 0) {
+				LayoutNode parent = nodes.get(rnd.nextInt(i));
+				vNode.connectParent(parent);
+				cNode.connectParent(parent.configNode());
+			}
+			vNode.setVisible(true);
+			vNode.setCollapse(false);
+			vNode.setPosition(rnd.nextDouble(), rnd.nextDouble());
+			nodes.add(vNode);
+		}
+		return graph;
+	}
+
+	private static double[] positions(TreeGraph<LayoutNode, LayoutEdge> graph) {
+		List<Double> result = new ArrayList<>();
+		for (LayoutNode n : graph.nodes()) {
+			result.add(n.getX());
+			result.add(n.getY());
+		}
+		double[] array = new double[result.size()];
+		for (int i = 0; i < array.length; i++)
+			array[i] = result.get(i);
+		return array;
+	}
+
+	@Test
+	void cancelWithoutMonitorStopsTheLayout() throws InterruptedException {
+		TreeGraph<LayoutNode, LayoutEdge> graph = makeGraph(2000, 1);
+		double[] before = positions(graph);
+		CountDownLatch started = new CountDownLatch(1);
+		List<Thread> workers = new ArrayList<>();
+		Executor executor = task -> {
+			Thread worker = new Thread(() -> {
+				started.countDown();
+				task.run();
+			});
+			workers.add(worker);
+			worker.start();
+		};
+		CompletableFuture<ILayout> future = new FRLayout(graph, true, true, true).computeAsync(0.0, null, executor);
+		started.await();
+		assertTrue(future.cancel(true));
+		// the worker must stop without ever writing positions
+		workers.get(0).join(60000);
+		assertFalse(workers.get(0).isAlive());
+		assertArrayEquals(before, positions(graph));
+	}
+
+}
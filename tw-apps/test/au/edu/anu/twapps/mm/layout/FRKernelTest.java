@@ -0,0 +1,203 @@
+/**************************************************************************
+ *  TW-APPS - Applications used by 3Worlds                                *
+ *                                                                        *
+ *  Copyright 2018: Jacques Gignoux & Ian D. Davies                       *
+ *       jacques.gignoux@upmc.fr                                          *
+ *       ian.davies@anu.edu.au                                            * 
+ *                                                                        *
+ *  TW-APPS contains ModelMaker and ModelRunner, programs used to         *
+ *  construct and run 3Worlds configuration graphs. All code herein is    *
+ *  independent of UI implementation.                                     *
+ *                                                                        *
+ **************************************************************************                                       
+ *  This file is part of TW-APPS (3Worlds applications).                  *
+ *                                                                        *
+ *  TW-APPS is free software: you can redistribute it and/or modify       *
+ *  it under the terms of the GNU General Public License as published by  *
+ *  the Free Software Foundation, either version 3 of the License, or     *
+ *  (at your option) any later version.                                   *
+ *                                                                        *
+ *  TW-APPS is distributed in the hope that it will be useful,            *
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *  GNU General Public License for more details.                          *                         
+ *                                                                        *
+ *  You should have received a copy of the GNU General Public License     *
+ *  along with TW-APPS.                                                   *
+ *  If not, see <https://www.gnu.org/licenses/gpl.html>                   *
+  **************************************************************************/
+
+package au.edu.anu.twapps.mm.layout;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+class FRKernelTest {
+
+	private static final int N = 200;
+	private static final double K = 10.0;
+
+	/* Random edges in both index orders, plus edges joining coincident vertices */
+	private static int[][] makeEdges(Random rnd) {
+		int m = 2 * N;
+		int[] p = new int[m];
+		int[] q = new int[m];
+		for (int e = 0; e < m - 4; e++) {
+			p[e] = rnd.nextInt(N);
+			q[e] = rnd.nextInt(N);
+		}
+		p[m - 4] = 0;
+		q[m - 4] = 1;
+		p[m - 3] = 3;
+		q[m - 3] = 2;
+		p[m - 2] = 7;
+		q[m - 2] = 5;
+		p[m - 1] = 5;
+		q[m - 1] = 6;
+		return new int[][] { p, q };
+	}
+
+	/* Random positions with groups of vertices sharing a location */
+	private static void makePositions(Random rnd, double[] x, double[] y) {
+		for (int i = 0; i < N; i++) {
+			x[i] = rnd.nextDouble() * 100;
+			y[i] = rnd.nextDouble() * 100;
+		}
+		for (int i = 1; i < 4; i++) {
+			x[i] = x[0];
+			y[i] = y[0];
+		}
+		for (int i = 5; i < 8; i++) {
+			x[i] = x[4];
+			y[i] = y[4];
+		}
+		for (int i = 20; i < N; i += 20) {
+			x[i] = x[10];
+			y[i] = y[10];
+		}
+	}
+
+	private static void run(FRKernel kernel, int iterations) {
+		double t = K;
+		for (int it = 0; it < iterations; it++) {
+			kernel.forces(K);
+			kernel.displace(t);
+			t *= 0.95;
+		}
+	}
+
+	/*
+	 * All vertices start at the origin and the temperature does not limit the
+	 * move, so the positions after one step are the raw forces.
+	 */
+	@Test
+	void coincidentForcesMatchExactly() {
+		int n = 6;
+		int[] p = { 0, 3, 4, 5, 1 };
+		int[] q = { 1, 2, 2, 0, 5 };
+		FRKernel seq = new FRKernel(n, p, q);
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			FRKernel par = new FRKernel(n, p, q).setPool(pool);
+			seq.forces(K);
+			seq.displace(Double.MAX_VALUE);
+			par.forces(K);
+			par.displace(Double.MAX_VALUE);
+			double[] sx = new double[n];
+			double[] sy = new double[n];
+			double[] px = new double[n];
+			double[] py = new double[n];
+			seq.positions(sx, sy);
+			par.positions(px, py);
+			assertArrayEquals(sx, px);
+			assertArrayEquals(sy, py);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/*
+	 * Vertex 18 has a self-loop and sits at the origin, far from all others, so
+	 * its position after one unlimited step is its force. The self-loop term is
+	 * a rounding residue but no smaller than the distant repulsion, so adding and
+	 * then subtracting it would change the sum. The sequential pass must skip
+	 * self-loops as the parallel adjacency does.
+	 */
+	@Test
+	void selfLoopsMatchExactly() {
+		int n = 20;
+		int[] p = { 18, 3, 18 };
+		int[] q = { 18, 4, 18 };
+		double[] x0 = new double[n];
+		double[] y0 = new double[n];
+		for (int i = 0; i < n; i++)
+			if (i != 18) {
+				x0[i] = 1e16 * (i + 1);
+				y0[i] = 7e15 * (i + 1);
+			}
+		FRKernel seq = new FRKernel(n, p, q);
+		seq.setPositions(x0, y0);
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			FRKernel par = new FRKernel(n, p, q).setPool(pool);
+			par.setPositions(x0, y0);
+			seq.forces(K);
+			seq.displace(Double.MAX_VALUE);
+			par.forces(K);
+			par.displace(Double.MAX_VALUE);
+			double[] sx = new double[n];
+			double[] sy = new double[n];
+			double[] px = new double[n];
+			double[] py = new double[n];
+			seq.positions(sx, sy);
+			par.positions(px, py);
+			assertArrayEquals(sx, px);
+			assertArrayEquals(sy, py);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	void parallelMatchesSequentialWithCoincidentVertices() {
+		Random rnd = new Random(42);
+		int[][] edges = makeEdges(rnd);
+		double[] x0 = new double[N];
+		double[] y0 = new double[N];
+		makePositions(rnd, x0, y0);
+
+		FRKernel seq = new FRKernel(N, edges[0], edges[1]);
+		seq.setPositions(x0, y0);
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			FRKernel par = new FRKernel(N, edges[0], edges[1]).setPool(pool);
+			par.setPositions(x0, y0);
+
+			// the first iteration has every coincident pair; check it alone too
+			run(seq, 1);
+			run(par, 1);
+			double[] sx = new double[N];
+			double[] sy = new double[N];
+			double[] px = new double[N];
+			double[] py = new double[N];
+			seq.positions(sx, sy);
+			par.positions(px, py);
+			assertArrayEquals(sx, px);
+			assertArrayEquals(sy, py);
+
+			run(seq, 50);
+			run(par, 50);
+			seq.positions(sx, sy);
+			par.positions(px, py);
+			assertArrayEquals(sx, px);
+			assertArrayEquals(sy, py);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+}
@@ -0,0 +1,238 @@
+/**************************************************************************
+ *  TW-APPS - Applications used by 3Worlds                                *
+ *                                                                        *
+ *  Copyright 2018: Jacques Gignoux & Ian D. Davies                       *
+ *       jacques.gignoux@upmc.fr                                          *
+ *       ian.davies@anu.edu.au                                            * 
+ *                                                                        *
+ *  TW-APPS contains ModelMaker and ModelRunner, programs used to         *
+ *  construct and run 3Worlds configuration graphs. All code herein is    *
+ *  independent of UI implementation.                                     *
+ *                                                                        *
+ **************************************************************************                                       
+ *  This file is part of TW-APPS (3Worlds applications).                  *
+ *                                                                        *
+ *  TW-APPS is free software: you can redistribute it and/or modify       *
+ *  it under the terms of the GNU General Public License as published by  *
+ *  the Free Software Foundation, either version 3 of the License, or     *
+ *  (at your option) any later version.                                   *
+ *                                                                        *
+ *  TW-APPS is distributed in the hope that it will be useful,            *
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *  GNU General Public License for more details.                          *                         
+ *                                                                        *
+ *  You should have received a copy of the GNU General Public License     *
+ *  along with TW-APPS.                                                   *
+ *  If not, see <https://www.gnu.org/licenses/gpl.html>                   *
+  **************************************************************************/
+
+package au.edu.anu.twapps.mm.layout;
+
+import static fr.cnrs.iees.twcore.constants.ConfigurationNodeLabels.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import au.edu.anu.twapps.mm.layoutGraph.LayoutEdge;
+import au.edu.anu.twapps.mm.layoutGraph.LayoutGraphFactory;
+import au.edu.anu.twapps.mm.layoutGraph.LayoutNode;
+import au.edu.anu.twcore.root.TwConfigFactory;
+import fr.cnrs.iees.omugi.graph.impl.TreeGraph;
+import fr.cnrs.iees.omugi.graph.impl.TreeGraphDataNode;
+
+/**
+ * Headless timing of every {@link ILayout} on synthetic layout graphs.
+ * <p>
+ * The construction and the {@link ILayout#compute(double) compute} of each
+ * layout are timed separately, with the bytes allocated by each (from
+ * {@link com.sun.management.ThreadMXBean}). Each layout is run a number of
+ * times to warm up before the measured runs, and node positions are reset
+ * from the same seed before every run.
+ * </p>
+ * <p>
+ * Usage (all arguments optional):
+ * </p>
+ * 
+ * <pre>
+ * LayoutBenchmark [nodes [branching [depth [crossLinks [warmups [runs [layouts [theta [sizes]]]]]]]]]
+ * </pre>
+ * <p>
+ * where crossLinks is the number of cross-link edges per node and layouts is a
+ * comma-separated list of {@link LayoutType} names and/or "Lombardi" (default
+ * all). The tree is filled breadth first until either nodes or depth is
+ * reached. A wide, flat tree (e.g. 5000 5000 1 0) exercises sibling
+ * navigation in the tree layouts.
+ * </p>
+ * <p>
+ * theta is the Barnes-Hut opening criterion of the force-directed layouts
+ * (default 0: exact repulsion, see {@link FRLayout#setBarnesHut(double)}).
+ * sizes is the number of graph sizes to sweep, doubling nodes each time
+ * (default 1). Compute time is also reported per n log<sub>2</sub> n so that
+ * the scaling of each layout can be read down the sweep.
+ * </p>
+ */
+public class LayoutBenchmark {
+	private static final long SEED = 1;
+
+	private static com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+			.getThreadMXBean();
+
+	private final TreeGraph<LayoutNode, LayoutEdge> graph;
+	private final LayoutNode root;
+	private final int size;
+	private double theta;
+
+	/**
+	 * @param nodes      maximum number of nodes.
+	 * @param branching  number of children of each node.
+	 * @param depth      maximum depth of the tree.
+	 * @param crossLinks number of cross-link edges per node.
+	 */
+	public LayoutBenchmark(int nodes, int branching, int depth, double crossLinks) {
+		TwConfigFactory cf = new TwConfigFactory();
+		LayoutGraphFactory vf = new LayoutGraphFactory();
+		graph = new TreeGraph<>(vf);
+		List<LayoutNode> all = new ArrayList<>();
+		List<Integer> depths = new ArrayList<>();
+		root = makeNode(cf, vf, N_ROOT.label(), "root");
+		all.add(root);
+		depths.add(0);
+		for (int parent = 0; all.size() < nodes && parent < all.size(); parent++)
+			if (depths.get(parent) < depth)
+				for (int c = 0; c < branching && all.size() < nodes; c++) {
+					LayoutNode child = makeNode(cf, vf, N_RECORD.label(), "n" + all.size());
+					child.connectParent(all.get(parent));
+					child.configNode().connectParent(all.get(parent).configNode());
+					all.add(child);
+					depths.add(depths.get(parent) + 1);
+				}
+		Random rnd = new Random(SEED);
+		int links = (int) (crossLinks * all.size());
+		for (int i = 0; i < links; i++) {
+			LayoutEdge e = vf.makeEdge(all.get(rnd.nextInt(all.size())), all.get(rnd.nextInt(all.size())), "e" + i);
+			e.setVisible(true);
+		}
+		for (LayoutNode n : all) {
+			n.setVisible(true);
+			n.setCollapse(false);
+		}
+		size = all.size();
+	}
+
+	/**
+	 * Set the Barnes-Hut opening criterion of the force-directed layouts.
+	 * 
+	 * @param theta opening criterion (0 for exact repulsion).
+	 * @return this benchmark.
+	 */
+	public LayoutBenchmark setBarnesHut(double theta) {
+		if (theta < 0.0)
+			throw new IllegalArgumentException("Barnes-Hut theta must be >= 0 [" + theta + "]");
+		this.theta = theta;
+		return this;
+	}
+
+	/**
+	 * @return Number of nodes in the graph.
+	 */
+	public int size() {
+		return size;
+	}
+
+	private static LayoutNode makeNode(TwConfigFactory cf, LayoutGraphFactory vf, String label, String id) {
+		TreeGraphDataNode cNode = (TreeGraphDataNode) cf.makeNode(cf.nodeClass(label), id);
+		LayoutNode vNode = vf.makeNode(cNode.id());
+		vNode.setConfigNode(cNode);
+		return vNode;
+	}
+
+	private void resetPositions() {
+		Random rnd = new Random(SEED);
+		for (LayoutNode n : graph.nodes())
+			n.setPosition(rnd.nextDouble(), rnd.nextDouble());
+	}
+
+	private ILayout construct(LayoutType type) {
+		switch (type) {
+		case OrderedTree:
+			return new OTLayout(root, true, true, true);
+		case RadialTree1:
+			return new RT1Layout(root, true, true, true);
+		case RadialTree2:
+			return new RT2Layout(root, true, true, true);
+		case SpringGraph:
+			return new FRLayout(graph, true, true, true).setBarnesHut(theta);
+		case MultilevelGraph:
+			return new MLLayout(graph, true, true, true).setBarnesHut(theta);
+		default:
+			throw new IllegalArgumentException("Unknown layout type: " + type);
+		}
+	}
+
+	/**
+	 * Time one layout type.
+	 * 
+	 * @param name    name to report.
+	 * @param type    layout type (null for the unlisted {@link LmbLayout}).
+	 * @param warmups number of unmeasured runs.
+	 * @param runs    number of measured runs.
+	 */
+	public void run(String name, LayoutType type, int warmups, int runs) {
+		long makeTime = 0, makeBytes = 0, computeTime = 0, computeBytes = 0;
+		long thread = Thread.currentThread().getId();
+		for (int r = 0; r < warmups + runs; r++) {
+			resetPositions();
+			long b0 = threads.getThreadAllocatedBytes(thread);
+			long t0 = System.nanoTime();
+			ILayout layout = type == null ? new LmbLayout(graph, true, true, true) : construct(type);
+			long t1 = System.nanoTime();
+			long b1 = threads.getThreadAllocatedBytes(thread);
+			layout.compute(0.0);
+			long t2 = System.nanoTime();
+			long b2 = threads.getThreadAllocatedBytes(thread);
+			if (r >= warmups) {
+				makeTime += t1 - t0;
+				makeBytes += b1 - b0;
+				computeTime += t2 - t1;
+				computeBytes += b2 - b1;
+			}
+		}
+		double nLogN = size * Math.log(Math.max(size, 2)) / Math.log(2);
+		System.out.println(String.format(
+				"%-16s construct %10.3f ms %10.1f kB   compute %10.3f ms %10.1f kB %8.1f MB/s %10.3f ns/(n log n)",
+				name, makeTime / 1e6 / runs, makeBytes / 1024.0 / runs, computeTime / 1e6 / runs,
+				computeBytes / 1024.0 / runs, computeTime == 0 ? 0.0 : computeBytes / 1.048576 / (computeTime / 1e3),
+				computeTime / nLogN / runs));
+	}
+
+	public static void main(String[] args) {
+		System.setProperty("java.awt.headless", "true");
+		int nodes = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+		int branching = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+		int depth = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+		double crossLinks = args.length > 3 ? Double.parseDouble(args[3]) : 0.1;
+		int warmups = args.length > 4 ? Integer.parseInt(args[4]) : 3;
+		int runs = args.length > 5 ? Integer.parseInt(args[5]) : 5;
+		List<String> layouts = new ArrayList<>();
+		if (args.length > 6)
+			layouts.addAll(Arrays.asList(args[6].split(",")));
+		double theta = args.length > 7 ? Double.parseDouble(args[7]) : 0.0;
+		int sizes = args.length > 8 ? Integer.parseInt(args[8]) : 1;
+		for (int s = 0; s < sizes; s++) {
+			LayoutBenchmark bench = new LayoutBenchmark(nodes << s, branching, depth, crossLinks).setBarnesHut(theta);
+			System.out.println("nodes " + bench.size() + ", branching " + branching + ", depth " + depth
+					+ ", cross-links/node " + crossLinks + ", theta " + theta + ", warm-ups " + warmups + ", runs "
+					+ runs);
+			for (LayoutType type : LayoutType.values())
+				if (layouts.isEmpty() || layouts.contains(type.name()))
+					bench.run(type.name(), type, warmups, runs);
+			if (layouts.isEmpty() || layouts.contains("Lombardi"))
+				bench.run("Lombardi", null, warmups, runs);
+		}
+	}
+
+}
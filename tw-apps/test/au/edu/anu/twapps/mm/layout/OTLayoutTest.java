@@ -0,0 +1,109 @@
+/**************************************************************************
+ *  TW-APPS - Applications used by 3Worlds                                *
+ *                                                                        *
+ *  Copyright 2018: Jacques Gignoux & Ian D. Davies                       *
+ *       jacques.gignoux@upmc.fr                                          *
+ *       ian.davies@anu.edu.au                                            * 
+ *                                                                        *
+ *  TW-APPS contains ModelMaker and ModelRunner, programs used to         *
+ *  construct and run 3Worlds configuration graphs. All code herein is    *
+ *  independent of UI implementation.                                     *
+ *                                                                        *
+ **************************************************************************                                       
+ *  This file is part of TW-APPS (3Worlds applications).                  *
+ *                                                                        *
+ *  TW-APPS is free software: you can redistribute it and/or modify       *
+ *  it under the terms of the GNU General Public License as published by  *
+ *  the Free Software Foundation, either version 3 of the License, or     *
+ *  (at your option) any later version.                                   *
+ *                                                                        *
+ *  TW-APPS is distributed in the hope that it will be useful,            *
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *  GNU General Public License for more details.                          *                         
+ *                                                                        *
+ *  You should have received a copy of the GNU General Public License     *
+ *  along with TW-APPS.                                                   *
+ *  If not, see <https://www.gnu.org/licenses/gpl.html>                   *
+  **************************************************************************/
+
+package au.edu.anu.twapps.mm.layout;
+
+import static fr.cnrs.iees.twcore.constants.ConfigurationNodeLabels.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+import au.edu.anu.twapps.mm.layoutGraph.LayoutGraphFactory;
+import au.edu.anu.twapps.mm.layoutGraph.LayoutNode;
+import au.edu.anu.twcore.root.TwConfigFactory;
+import fr.cnrs.iees.omugi.graph.impl.TreeGraphDataNode;
+
+class OTLayoutTest {
+
+	/* A random tree; returns its nodes, root first */
+	private static List<LayoutNode> makeTree(int size, long seed) {
+		TwConfigFactory cf = new TwConfigFactory();
+		LayoutGraphFactory vf = new LayoutGraphFactory();
+		Random rnd = new Random(seed);
+		List<LayoutNode> nodes = new ArrayList<>();
+		for (int i = 0; i < size; i++) {
+			TreeGraphDataNode cNode = (TreeGraphDataNode) cf
+					.makeNode(cf.nodeClass(i == 0 ? N_ROOT.label() : N_RECORD.label()), "n" + i);
+			LayoutNode vNode = vf.makeNode(cNode.id());
+			vNode.setConfigNode(cNode);
+			vNode.setVisible(true);
+			vNode.setCollapse(false);
+			if (i > 0) {
+				LayoutNode parent = nodes.get(rnd.nextInt(i));
+				vNode.connectParent(parent);
+				cNode.connectParent(parent.configNode());
+			}
+			nodes.add(vNode);
+		}
+		return nodes;
+	}
+
+	private static double[] layout(List<LayoutNode> tree) {
+		for (LayoutNode n : tree)
+			n.setPosition(0, 0);
+		new OTLayout(tree.get(0), true, false, false).compute(0.0);
+		double[] result = new double[2 * tree.size()];
+		for (int i = 0; i < tree.size(); i++) {
+			result[2 * i] = tree.get(i).getX();
+			result[2 * i + 1] = tree.get(i).getY();
+		}
+		return result;
+	}
+
+	@Test
+	void concurrentLayoutsMatchSequential() throws Exception {
+		List<List<LayoutNode>> trees = new ArrayList<>();
+		for (int t = 0; t < 8; t++)
+			trees.add(makeTree(200 + 100 * t, t));
+		List<double[]> expected = new ArrayList<>();
+		for (List<LayoutNode> tree : trees)
+			expected.add(layout(tree));
+
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		try {
+			for (int repeat = 0; repeat < 5; repeat++) {
+				List<Future<double[]>> results = new ArrayList<>();
+				for (List<LayoutNode> tree : trees)
+					results.add(pool.submit(() -> layout(tree)));
+				for (int t = 0; t < trees.size(); t++)
+					assertArrayEquals(expected.get(t), results.get(t).get());
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+}
@@ -0,0 +1,126 @@
+/**************************************************************************
+ *  TW-APPS - Applications used by 3Worlds                                *
+ *                                                                        *
+ *  Copyright 2018: Jacques Gignoux & Ian D. Davies                       *
+ *       jacques.gignoux@upmc.fr                                          *
+ *       ian.davies@anu.edu.au                                            * 
+ *                                                                        *
+ *  TW-APPS contains ModelMaker and ModelRunner, programs used to         *
+ *  construct and run 3Worlds configuration graphs. All code herein is    *
+ *  independent of UI implementation.                                     *
+ *                                                                        *
+ **************************************************************************                                       
+ *  This file is part of TW-APPS (3Worlds applications).                  *
+ *                                                                        *
+ *  TW-APPS is free software: you can redistribute it and/or modify       *
+ *  it under the terms of the GNU General Public License as published by  *
+ *  the Free Software Foundation, either version 3 of the License, or     *
+ *  (at your option) any later version.                                   *
+ *                                                                        *
+ *  TW-APPS is distributed in the hope that it will be useful,            *
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *  GNU General Public License for more details.                          *                         
+ *                                                                        *
+ *  You should have received a copy of the GNU General Public License     *
+ *  along with TW-APPS.                                                   *
+ *  If not, see <https://www.gnu.org/licenses/gpl.html>                   *
+  **************************************************************************/
+
+package au.edu.anu.twapps.mm.undo;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class TextDeltaTest {
+
+	private static String[] makeText(int size, Random rnd) {
+		String[] result = new String[size];
+		for (int i = 0; i < size; i++)
+			result[i] = "line " + rnd.nextInt(size);
+		return result;
+	}
+
+	/* A copy of text with some lines changed, deleted and inserted */
+	private static String[] edit(String[] text, int edits, Random rnd) {
+		List<String> result = new ArrayList<>(Arrays.asList(text));
+		for (int e = 0; e < edits; e++) {
+			int at = result.isEmpty() ? 0 : rnd.nextInt(result.size());
+			int op = result.isEmpty() ? 1 : rnd.nextInt(3);
+			if (op == 0)
+				result.set(at, "changed " + e);
+			else if (op == 1)
+				result.add(at, "inserted " + e);
+			else
+				result.remove(at);
+		}
+		return result.toArray(new String[result.size()]);
+	}
+
+	private static TextDelta copy(TextDelta delta) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		delta.writeTo(new DataOutputStream(bytes));
+		ByteBuffer in = ByteBuffer.wrap(bytes.toByteArray());
+		TextDelta result = TextDelta.readFrom(in);
+		assertFalse(in.hasRemaining());
+		return result;
+	}
+
+	private static void assertRoundTrip(String[] from, String[] to) throws IOException {
+		TextDelta delta = TextDelta.diff(from, to);
+		assertArrayEquals(to, delta.apply(from));
+		assertArrayEquals(to, copy(delta).apply(from));
+	}
+
+	@Test
+	void roundTrip() throws IOException {
+		Random rnd = new Random(1);
+		String[] text = makeText(500, rnd);
+		for (int edits = 0; edits < 50; edits += 7)
+			assertRoundTrip(text, edit(text, edits, rnd));
+	}
+
+	@Test
+	void identicalTextsGiveEmptyDelta() throws IOException {
+		String[] text = makeText(100, new Random(2));
+		TextDelta delta = TextDelta.diff(text, text.clone());
+		assertTrue(delta.isEmpty());
+		assertTrue(copy(delta).isEmpty());
+		assertArrayEquals(text, delta.apply(text));
+	}
+
+	@Test
+	void emptyTexts() throws IOException {
+		String[] text = makeText(30, new Random(3));
+		String[] empty = new String[0];
+		assertRoundTrip(empty, empty);
+		assertRoundTrip(empty, text);
+		assertRoundTrip(text, empty);
+		// what an empty file splits into
+		assertRoundTrip(new String[] { "" }, text);
+		assertRoundTrip(text, new String[] { "" });
+	}
+
+	@Test
+	void moreEditsThanSearched() throws IOException {
+		Random rnd = new Random(4);
+		String[] text = makeText(4 * TextDelta.MAX_EDITS, rnd);
+		String[] changed = text.clone();
+		for (int i = 1; i < changed.length - 1; i += 2)
+			changed[i] = "changed " + i;
+		assertRoundTrip(text, changed);
+		assertRoundTrip(text, edit(text, 2 * TextDelta.MAX_EDITS, rnd));
+		assertRoundTrip(text, makeText(TextDelta.MAX_EDITS, rnd));
+	}
+
+}
@@ -0,0 +1,181 @@
+/**************************************************************************
+ *  TW-APPS - Applications used by 3Worlds                                *
+ *                                                                        *
+ *  Copyright 2018: Jacques Gignoux & Ian D. Davies                       *
+ *       jacques.gignoux@upmc.fr                                          *
+ *       ian.davies@anu.edu.au                                            * 
+ *                                                                        *
+ *  TW-APPS contains ModelMaker and ModelRunner, programs used to         *
+ *  construct and run 3Worlds configuration graphs. All code herein is    *
+ *  independent of UI implementation.                                     *
+ *                                                                        *
+ **************************************************************************                                       
+ *  This file is part of TW-APPS (3Worlds applications).                  *
+ *                                                                        *
+ *  TW-APPS is free software: you can redistribute it and/or modify       *
+ *  it under the terms of the GNU General Public License as published by  *
+ *  the Free Software Foundation, either version 3 of the License, or     *
+ *  (at your option) any later version.                                   *
+ *                                                                        *
+ *  TW-APPS is distributed in the hope that it will be useful,            *
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of        *
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the         *
+ *  GNU General Public License for more details.                          *                         
+ *                                                                        *
+ *  You should have received a copy of the GNU General Public License     *
+ *  along with TW-APPS.                                                   *
+ *  If not, see <https://www.gnu.org/licenses/gpl.html>                   *
+  **************************************************************************/
+
+package au.edu.anu.twapps.mm.undo;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import au.edu.anu.twcore.project.Project;
+
+class TextSnapshotTest {
+
+	// the journal lives in the project directory
+	private static boolean created;
+
+	@BeforeAll
+	static void openProject() {
+		if (!Project.isOpen()) {
+			Project.create("TextSnapshotTest");
+			created = true;
+		}
+	}
+
+	@AfterAll
+	static void closeProject() {
+		UndoJournal.close();
+		UndoFiles.clear();
+		if (created) {
+			File dir = Project.getProjectFile();
+			Project.close();
+			deleteAll(dir);
+		}
+	}
+
+	private static void deleteAll(File f) {
+		File[] files = f.listFiles();
+		if (files != null)
+			for (File c : files)
+				deleteAll(c);
+		f.delete();
+	}
+
+	/* Version v of a text: one line of every 10 is changed at each version */
+	private static String[] version(int v) {
+		String[] result = new String[200];
+		for (int i = 0; i < result.length; i++)
+			result[i] = i % 10 == v % 10 ? "line " + i + " version " + v : "line " + i;
+		return result;
+	}
+
+	// what MMMemento does when the Caretaker spills a state
+	private static void spill(TextSnapshot s) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		s.writePayload(new DataOutputStream(bytes));
+		long offset = UndoJournal.append(bytes.toByteArray());
+		s.spilled(offset, bytes.size());
+	}
+
+	private static List<TextSnapshot> makeChain(int size) {
+		List<TextSnapshot> result = new ArrayList<>();
+		TextSnapshot base = null;
+		for (int v = 0; v < size; v++) {
+			TextSnapshot s = TextSnapshot.capture(base, version(v));
+			// only the current version keeps its full text
+			if (base != null)
+				base.release();
+			result.add(s);
+			base = s;
+		}
+		return result;
+	}
+
+	@Test
+	void linesRoundTripAcrossCheckpoints() {
+		int size = 3 * TextSnapshot.CHECKPOINT_INTERVAL + 5;
+		List<TextSnapshot> chain = makeChain(size);
+		for (int v = 0; v < size; v++) {
+			assertEquals(v % TextSnapshot.CHECKPOINT_INTERVAL == 0, chain.get(v).isCheckpoint());
+			assertArrayEquals(version(v), chain.get(v).lines());
+		}
+	}
+
+	@Test
+	void linesRoundTripWithSpilledSnapshots() throws IOException {
+		int size = 3 * TextSnapshot.CHECKPOINT_INTERVAL + 5;
+		List<TextSnapshot> chain = makeChain(size);
+		// spill a run spanning a checkpoint, leaving both ends in memory
+		for (int v = 5; v < 2 * TextSnapshot.CHECKPOINT_INTERVAL + 5; v++) {
+			spill(chain.get(v));
+			assertEquals(0, chain.get(v).byteSize());
+		}
+		for (int v = 0; v < size; v++)
+			assertArrayEquals(version(v), chain.get(v).lines(), "version " + v);
+		// and with everything but the current version spilled
+		for (int v = 0; v < size - 1; v++)
+			if (chain.get(v).byteSize() > 0)
+				spill(chain.get(v));
+		for (int v = 0; v < size; v++)
+			assertArrayEquals(version(v), chain.get(v).lines(), "version " + v);
+	}
+
+	@Test
+	void journalRecordsReadBackAcrossChunks() throws IOException {
+		// enough to map several chunks, including a record larger than a chunk
+		int[] lengths = new int[40];
+		for (int i = 0; i < lengths.length; i++)
+			lengths[i] = i == 20 ? UndoJournal.FIRST_CHUNK + 1000 : 100_000 + 7919 * i;
+		long[] offsets = new long[lengths.length];
+		for (int i = 0; i < lengths.length; i++) {
+			byte[] record = new byte[lengths[i]];
+			Arrays.fill(record, (byte) i);
+			offsets[i] = UndoJournal.append(record);
+		}
+		for (int i = 0; i < lengths.length; i++) {
+			ByteBuffer record = UndoJournal.read(offsets[i], lengths[i]);
+			assertEquals(lengths[i], record.remaining());
+			while (record.hasRemaining())
+				assertEquals(i, record.get());
+		}
+	}
+
+	@Test
+	void retainedTextSurvivesSpill() throws IOException {
+		List<TextSnapshot> chain = makeChain(TextSnapshot.CHECKPOINT_INTERVAL / 2);
+		TextSnapshot s = chain.get(3).retain();
+		for (TextSnapshot t : chain)
+			spill(t);
+		assertArrayEquals(version(3), s.lines());
+		s.release();
+		assertArrayEquals(version(3), s.lines());
+	}
+
+	@Test
+	void linesSerialiseExactly() throws IOException {
+		String[] lines = { "", "plain", "latin-1 \u00e9\u00ff", "", "\r" };
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		TextSnapshot.writeLines(new DataOutputStream(bytes), lines);
+		ByteBuffer in = ByteBuffer.wrap(bytes.toByteArray());
+		assertArrayEquals(lines, TextSnapshot.readLines(in));
+		assertFalse(in.hasRemaining());
+	}
+
+}